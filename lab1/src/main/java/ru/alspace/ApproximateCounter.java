@@ -0,0 +1,333 @@
+package ru.alspace;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Приближённый подсчёт частот в фиксированном объёме памяти.
+ * <p>
+ * Частоты оцениваются скетчем Count-Min: оценка никогда не меньше истинной частоты
+ * и с вероятностью не ниже {@code 1 - e^-DEPTH} превышает её не более чем на {@link #errorBound()}.
+ * Количество различных слов оценивается HyperLogLog с относительной погрешностью около
+ * {@code 1.04 / sqrt(2^HLL_BITS)}. Строки хранятся только для K самых частых слов-кандидатов,
+ * которые лежат в небольшой хеш-таблице и куче по минимуму оценки.
+ */
+final class ApproximateCounter implements FrequencyTable {
+    // Ширина и глубина скетча Count-Min
+    private static final int WIDTH = 1 << 15;
+    private static final int DEPTH = 7;
+    // Количество бит хеша, задающих номер регистра HyperLogLog
+    private static final int HLL_BITS = 14;
+
+    private final long[] sketch = new long[WIDTH * DEPTH];
+    private final byte[] registers = new byte[1 << HLL_BITS];
+    private long total = 0;
+
+    // Кандидаты в самые частые слова: хеш-таблица на открытой адресации...
+    private final int limit;
+    private final String[] keys;
+    private final long[] hashes;
+    private final long[] estimates;
+    private final int[] heapPositions;
+    // ...и куча по минимуму оценки из номеров ячеек таблицы
+    private final int[] heap;
+    private int heapSize = 0;
+
+    /**
+     * @param limit сколько самых частых слов отслеживать
+     */
+    ApproximateCounter(int limit) {
+        this.limit = limit;
+        final int capacity = Integer.highestOneBit(Math.max(limit, 8) * 4 - 1) << 1;
+        keys = new String[capacity];
+        hashes = new long[capacity];
+        estimates = new long[capacity];
+        heapPositions = new int[capacity];
+        heap = new int[limit];
+    }
+
+    @Override
+    public void add(char[] chars, int length, int hash, long count) {
+        final long hash64 = hash64(chars, length);
+        total += count;
+
+        // Count-Min: индексы строк получаются двойным хешированием
+        final int h1 = (int) hash64;
+        final int h2 = (int) (hash64 >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            final int index = row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+            sketch[index] += count;
+            estimate = Math.min(estimate, sketch[index]);
+        }
+
+        // HyperLogLog: старшие биты задают регистр, в нём хранится максимальный ранг
+        final int register = (int) (hash64 >>> (64 - HLL_BITS));
+        final int rank = Long.numberOfLeadingZeros((hash64 << HLL_BITS) | (1L << (HLL_BITS - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+
+        offer(chars, length, hash64, estimate);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Скетчи складываются, регистры HyperLogLog объединяются по максимуму,
+     * а кандидаты обеих таблиц переоцениваются по объединённому скетчу.
+     */
+    @Override
+    public void addAll(FrequencyTable other) {
+        if (!(other instanceof ApproximateCounter counter) || counter.limit != limit) {
+            FrequencyTable.super.addAll(other);
+            return;
+        }
+        for (int i = 0; i < sketch.length; i++) {
+            sketch[i] += counter.sketch[i];
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], counter.registers[i]);
+        }
+        total += counter.total;
+
+        final String[] candidates = Arrays.copyOf(topWords(), heapSize + counter.heapSize);
+        System.arraycopy(counter.topWords(), 0, candidates, heapSize, counter.heapSize);
+        clearCandidates();
+        for (String word : candidates) {
+            final char[] chars = word.toCharArray();
+            final long hash64 = hash64(chars, chars.length);
+            offer(chars, chars.length, hash64, estimate(hash64));
+        }
+    }
+
+    /**
+     * Возвращает оценку частоты слова (не меньше истинной).
+     */
+    @Override
+    public long get(String word) {
+        final char[] chars = word.toCharArray();
+        return estimate(hash64(chars, chars.length));
+    }
+
+    /**
+     * Возвращает оценку количества различных слов по HyperLogLog.
+     */
+    @Override
+    public long size() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Поправка для малых значений: линейный подсчёт
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) sketch.length * Long.BYTES + registers.length
+                + (long) keys.length * (Long.BYTES * 2 + Integer.BYTES * 2);
+    }
+
+    /**
+     * Максимальная ошибка оценки частоты: {@code e / WIDTH} от общего числа слов.
+     */
+    long errorBound() {
+        return (long) Math.ceil(Math.E / WIDTH * total);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Выдаются только отслеживаемые самые частые слова в порядке убывания оценки.
+     */
+    @Override
+    public <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E {
+        for (String word : topWords()) {
+            consumer.accept(word.toCharArray(), word.length(), get(word));
+        }
+    }
+
+    @Override
+    public Map<String, Long> asMap() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (String word : topWords()) {
+            result.put(word, get(word));
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает отслеживаемые слова в порядке убывания оценки.
+     */
+    private String[] topWords() {
+        final Integer[] slots = new Integer[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            slots[i] = heap[i];
+        }
+        Arrays.sort(slots, Comparator.comparingLong((Integer slot) -> estimates[slot]).reversed());
+        final String[] words = new String[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            words[i] = keys[slots[i]];
+        }
+        return words;
+    }
+
+    private long estimate(long hash64) {
+        final int h1 = (int) hash64;
+        final int h2 = (int) (hash64 >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch[row * WIDTH + ((h1 + row * h2) & (WIDTH - 1))]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Обновляет оценку слова среди кандидатов или добавляет его, вытесняя кандидата с наименьшей оценкой.
+     */
+    private void offer(char[] chars, int length, long hash64, long estimate) {
+        final int mask = keys.length - 1;
+        int slot = (int) hash64 & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash64 && equals(key, chars, length)) {
+                estimates[slot] = estimate;
+                siftDown(heapPositions[slot]);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (heapSize == limit) {
+            if (estimate <= estimates[heap[0]]) {
+                return;
+            }
+            removeMin();
+            // после удаления ячейки могли сдвинуться, ищем свободную заново
+            slot = (int) hash64 & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        keys[slot] = new String(chars, 0, length);
+        hashes[slot] = hash64;
+        estimates[slot] = estimate;
+        heap[heapSize] = slot;
+        heapPositions[slot] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void clearCandidates() {
+        Arrays.fill(keys, null);
+        heapSize = 0;
+    }
+
+    /**
+     * Удаляет из кучи и из таблицы кандидата с наименьшей оценкой.
+     */
+    private void removeMin() {
+        int slot = heap[0];
+        heap[0] = heap[--heapSize];
+        heapPositions[heap[0]] = 0;
+        siftDown(0);
+
+        // Удаление из таблицы с линейным пробированием: сдвигаем назад следующие элементы цепочки
+        final int mask = keys.length - 1;
+        keys[slot] = null;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == null) {
+                return;
+            }
+            final int ideal = (int) hashes[next] & mask;
+            final boolean reachable = slot <= next ? slot < ideal && ideal <= next : slot < ideal || ideal <= next;
+            if (reachable) {
+                continue;
+            }
+            keys[slot] = keys[next];
+            hashes[slot] = hashes[next];
+            estimates[slot] = estimates[next];
+            heapPositions[slot] = heapPositions[next];
+            heap[heapPositions[slot]] = slot;
+            keys[next] = null;
+            slot = next;
+        }
+    }
+
+    private void siftUp(int position) {
+        final int slot = heap[position];
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            if (estimates[heap[parent]] <= estimates[slot]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        final int slot = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && estimates[heap[child + 1]] < estimates[heap[child]]) {
+                child++;
+            }
+            if (estimates[slot] <= estimates[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    /**
+     * 64-битный хеш слова: FNV-1a по символам с финальным перемешиванием из MurmurHash3.
+     */
+    private static long hash64(char[] chars, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ chars[i]) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static boolean equals(String key, char[] chars, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package ru.alspace;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторная классификация ASCII-символов через {@code jdk.incubator.vector}.
+ * <p>
+ * За один шаг обрабатывается {@link #BYTE_LANES} байтов или {@link #CHAR_LANES} символов:
+ * строится маска символов слова (цифры и латинские буквы - единственные буквы и цифры среди ASCII)
+ * и все буквы переводятся в нижний регистр. Вместе с маской возвращается количество ASCII-символов до первого
+ * не-ASCII символа: вызывающий код берёт из шага только эти символы, а с не-ASCII символа продолжает обычным путём.
+ * <p>
+ * Класс загружается, только если модуль {@code jdk.incubator.vector} подключён к JVM.
+ */
+final class AsciiVectors {
+    // Ширина ограничена 32 элементами (256 бит для байтов, 512 бит для символов), чтобы маска помещалась
+    // в младшие 32 бита результата рядом с количеством ASCII-символов
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED.vectorBitSize() > 256
+            ? ByteVector.SPECIES_256
+            : ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED.vectorBitSize() > 512
+            ? ShortVector.SPECIES_512
+            : ShortVector.SPECIES_PREFERRED;
+
+    /**
+     * Количество байтов, обрабатываемых за один шаг.
+     */
+    static final int BYTE_LANES = BYTES.length();
+    /**
+     * Количество символов, обрабатываемых за один шаг.
+     */
+    static final int CHAR_LANES = CHARS.length();
+
+    private AsciiVectors() {
+    }
+
+    /**
+     * Количество ASCII-символов в начале шага, до первого не-ASCII символа.
+     */
+    static int asciiLanes(long classified) {
+        return (int) (classified >>> 32);
+    }
+
+    /**
+     * Маска символов слова (бит i - элемент i шага); биты не-ASCII символов равны 0.
+     */
+    static long wordMask(long classified) {
+        return classified & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Классифицирует байты {@code source[offset..offset + BYTE_LANES)}.
+     *
+     * @param lowered массив, куда записываются байты с буквами в нижнем регистре
+     * @return результат для {@link #asciiLanes} и {@link #wordMask} (бит i маски - байт {@code offset + i})
+     */
+    static long classify(byte[] source, int offset, byte[] lowered) {
+        final ByteVector vector = ByteVector.fromArray(BYTES, source, offset);
+        final int ascii = vector.lt((byte) 0).firstTrue();
+        final VectorMask<Byte> digits = vector.compare(VectorOperators.GE, (byte) '0')
+                .and(vector.compare(VectorOperators.LE, (byte) '9'));
+        // Установка бита 0x20 переводит A-Z в a-z, а остальные символы не попадают в этот диапазон
+        final ByteVector folded = vector.or((byte) 0x20);
+        final VectorMask<Byte> letters = folded.compare(VectorOperators.GE, (byte) 'a')
+                .and(folded.compare(VectorOperators.LE, (byte) 'z'));
+        vector.blend(folded, letters).intoArray(lowered, 0);
+        return (long) ascii << 32 | digits.or(letters).toLong();
+    }
+
+    /**
+     * Классифицирует символы {@code source[offset..offset + CHAR_LANES)}.
+     *
+     * @param lowered массив, куда записываются символы с буквами в нижнем регистре
+     * @return результат для {@link #asciiLanes} и {@link #wordMask} (бит i маски - символ {@code offset + i})
+     */
+    static long classify(char[] source, int offset, char[] lowered) {
+        final ShortVector vector = ShortVector.fromCharArray(CHARS, source, offset);
+        final int ascii = vector.compare(VectorOperators.UNSIGNED_GT, (short) 0x7F).firstTrue();
+        final VectorMask<Short> digits = vector.compare(VectorOperators.GE, (short) '0')
+                .and(vector.compare(VectorOperators.LE, (short) '9'));
+        final ShortVector folded = vector.or((short) 0x20);
+        final VectorMask<Short> letters = folded.compare(VectorOperators.GE, (short) 'a')
+                .and(folded.compare(VectorOperators.LE, (short) 'z'));
+        vector.blend(folded, letters).intoCharArray(lowered, 0);
+        return (long) ascii << 32 | digits.or(letters).toLong();
+    }
+}
@@ -0,0 +1,168 @@
+package ru.alspace;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Чтение сжатых входных файлов.
+ * <p>
+ * Формат gzip определяется по первым байтам файла ({@code 1F 8B}). У zlib (deflate с заголовком {@code 78 xx})
+ * заголовок совпадает с обычными буквами ({@code 78 5E} - это "x^"), поэтому файл считается сжатым zlib,
+ * только если у него и заголовок zlib, и расширение {@code .zz}, {@code .z} или {@code .zlib}.
+ * Распаковка идёт в отдельном потоке, который складывает блоки байтов в ограниченную очередь,
+ * так что распаковка и разбор слов выполняются одновременно.
+ */
+final class CompressedInput {
+    private static final int GZIP_MAGIC = 0x1F8B;
+    // Заголовки zlib с окном 32 КБ для всех уровней сжатия; другие сочетания в тексте встречаются чаще, чем в архивах
+    private static final Set<Integer> ZLIB_HEADERS = Set.of(0x7801, 0x785E, 0x789C, 0x78DA);
+    private static final Set<String> ZLIB_EXTENSIONS = Set.of(".zz", ".z", ".zlib");
+    // Размер распакованного блока и сколько блоков может ждать разбора
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Проверяет, сжат ли файл в формате gzip или zlib.
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        return header(file) != 0;
+    }
+
+    /**
+     * Открывает файл и возвращает поток распакованных байтов; распаковка идёт в отдельном потоке.
+     */
+    static InputStream open(Path file) throws IOException {
+        final int header = header(file);
+        final InputStream input = new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE);
+        try {
+            final InputStream decompressed = header == GZIP_MAGIC
+                    ? new GZIPInputStream(input, IO_BUFFER_SIZE)
+                    : new InflaterInputStream(input);
+            return new DecompressingStream(decompressed, file.getFileName().toString());
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает первые два байта сжатого файла или 0, если файл не сжат.
+     */
+    private static int header(Path file) throws IOException {
+        final byte[] bytes = new byte[2];
+        try (InputStream input = Files.newInputStream(file)) {
+            if (input.readNBytes(bytes, 0, 2) < 2) {
+                return 0;
+            }
+        }
+        final int header = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        return header == GZIP_MAGIC || ZLIB_HEADERS.contains(header) && hasZlibExtension(file) ? header : 0;
+    }
+
+    private static boolean hasZlibExtension(Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        final int dot = name.lastIndexOf('.');
+        return dot >= 0 && ZLIB_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    /**
+     * Поток, который читает блоки, распакованные отдельным потоком.
+     */
+    private static final class DecompressingStream extends InputStream {
+        // Метка конца данных
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final InputStream source;
+        private final Thread thread;
+        private volatile IOException failure;
+
+        private byte[] block = new byte[0];
+        private int position = 0;
+
+        DecompressingStream(InputStream source, String name) {
+            this.source = source;
+            this.thread = new Thread(this::decompress, "lab1-decompress-" + name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void decompress() {
+            try {
+                while (true) {
+                    final byte[] buffer = new byte[BLOCK_SIZE];
+                    final int read = source.readNBytes(buffer, 0, buffer.length);
+                    if (read == 0) {
+                        break;
+                    }
+                    blocks.put(read == buffer.length ? buffer : Arrays.copyOf(buffer, read));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return; // поток закрыт читателем
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException ignored) {
+                // поток закрыт читателем
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == block.length) {
+                if (block == END) {
+                    return -1;
+                }
+                try {
+                    block = blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Чтение сжатого файла прервано");
+                }
+                position = 0;
+                if (block == END) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+            }
+            final int count = Math.min(length, block.length - position);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            thread.interrupt();
+            source.close();
+        }
+    }
+}
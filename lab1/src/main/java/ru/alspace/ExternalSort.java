@@ -0,0 +1,109 @@
+package ru.alspace;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Внешняя сортировка словаря для таблиц, которые хранят его вне кучи или на диске, и для потоков записей,
+ * которые нельзя собрать в таблицу.
+ * <p>
+ * Записи копируются в кучу порциями, объём которых не превышает заданный предел; каждая порция
+ * сортируется и записывается во временный файл (серию, см. {@link RunFiles}), а серии сливаются
+ * k-путевым слиянием. Если весь словарь уместился в одну порцию, он сортируется в памяти без записи на диск.
+ */
+final class ExternalSort {
+    // Приблизительный объём записи в куче без символов слова: запись, строка и её массив
+    private static final int ENTRY_OVERHEAD = 72;
+
+    private ExternalSort() {
+    }
+
+    /**
+     * Передаёт слова таблицы в {@code consumer} в порядке {@code order}.
+     * Исключения {@code consumer} передаются вызывающему коду без изменений.
+     *
+     * @param memoryLimit предел объёма порции в куче в байтах
+     * @param parallel    сортировать порции параллельно
+     */
+    static <E extends Exception> void forEach(FrequencyTable table, Comparator<WordRanking.Entry> order,
+                                              long memoryLimit, boolean parallel,
+                                              FrequencyTable.EntryConsumer<E> consumer) throws E {
+        final WordRanking.Source<RuntimeException> source = table::forEach;
+        forEach(source, order, memoryLimit, parallel, consumer);
+    }
+
+    /**
+     * Передаёт слова из однократного потока записей в {@code consumer} в порядке {@code order}.
+     * Каждое слово должно встречаться в потоке один раз.
+     */
+    static <S extends Exception, E extends Exception> void forEach(WordRanking.Source<S> source,
+                                                                   Comparator<WordRanking.Entry> order,
+                                                                   long memoryLimit, boolean parallel,
+                                                                   FrequencyTable.EntryConsumer<E> consumer)
+            throws S, E {
+        final List<Path> runs = new ArrayList<>();
+        try {
+            final List<WordRanking.Entry> portion = new ArrayList<>();
+            final long[] portionSize = {0};
+            source.forEach((chars, length, count) -> {
+                portion.add(new WordRanking.Entry(new String(chars, 0, length), count));
+                portionSize[0] += ENTRY_OVERHEAD + 2L * length;
+                if (portionSize[0] > memoryLimit) {
+                    writeRun(runs, sort(portion, order, parallel));
+                    portion.clear();
+                    portionSize[0] = 0;
+                }
+            });
+            if (runs.isEmpty()) {
+                emit(sort(portion, order, parallel), consumer);
+                return;
+            }
+            if (!portion.isEmpty()) {
+                writeRun(runs, sort(portion, order, parallel));
+                portion.clear();
+            }
+
+            try (RunFiles.Merge merge = RunFiles.merge(runs, order)) {
+                merge.forEach(consumer);
+            }
+        } finally {
+            RunFiles.delete(runs);
+        }
+    }
+
+    private static WordRanking.Entry[] sort(List<WordRanking.Entry> portion, Comparator<WordRanking.Entry> order,
+                                            boolean parallel) {
+        final WordRanking.Entry[] entries = portion.toArray(new WordRanking.Entry[0]);
+        if (parallel) {
+            Arrays.parallelSort(entries, order);
+        } else {
+            Arrays.sort(entries, order);
+        }
+        return entries;
+    }
+
+    private static <E extends Exception> void emit(WordRanking.Entry[] entries,
+                                                   FrequencyTable.EntryConsumer<E> consumer) throws E {
+        char[] buffer = new char[64];
+        for (WordRanking.Entry entry : entries) {
+            final String word = entry.word();
+            if (word.length() > buffer.length) {
+                buffer = new char[Math.max(word.length(), buffer.length * 2)];
+            }
+            word.getChars(0, word.length(), buffer, 0);
+            consumer.accept(buffer, word.length(), entry.count());
+        }
+    }
+
+    private static void writeRun(List<Path> runs, WordRanking.Entry[] entries) {
+        try (RunFiles.Writer writer = RunFiles.create()) {
+            runs.add(writer.run());
+            for (WordRanking.Entry entry : entries) {
+                writer.write(entry.word(), entry.count());
+            }
+        }
+    }
+}
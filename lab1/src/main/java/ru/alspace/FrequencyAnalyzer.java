@@ -1,52 +1,1137 @@
 package ru.alspace;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
 
 public final class FrequencyAnalyzer {
-    private final HashMap<String, Long> frequency = new HashMap<>();
+    // Размер блока, который задача читает из файла за один раз
+    private static final int BLOCK_SIZE = 16 * 1024 * 1024;
+    // Размер окна, которое отображается в память за один раз
+    private static final int MAP_WINDOW_SIZE = 256 * 1024 * 1024;
+    // Размер буфера символов при чтении из потока
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+    // Во сколько раз задач больше, чем потоков (для балансировки нагрузки)
+    private static final int TASKS_PER_THREAD = 4;
+    // Минимальный суммарный размер пакета мелких файлов
+    private static final int MIN_BATCH_SIZE = 1024 * 1024;
+    // Размер блока при конвейерной обработке потока и количество буферов на рабочий поток
+    private static final int STREAM_BLOCK_SIZE = 1024 * 1024;
+    private static final int BLOCKS_PER_THREAD = 2;
+    // Через сколько байтов анализатор записывает событие о ходе разбора
+    private static final long PROGRESS_BYTES = 16 * 1024 * 1024;
+
+    // Для ASCII-символов: символ в нижнем регистре, если это буква или цифра, иначе 0
+    private static final char[] ASCII_WORD_CHARS = new char[128];
+
+    // Векторная классификация доступна, только если JVM запущена с --add-modules jdk.incubator.vector
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static {
+        for (char c = 0; c < ASCII_WORD_CHARS.length; c++) {
+            if (Character.isLetterOrDigit(c)) {
+                ASCII_WORD_CHARS[c] = Character.toLowerCase(c);
+            }
+        }
+    }
+
+    private final Options options;
+    // Фильтр стоп-слов и окончаний; null - слова считаются как есть
+    private final WordFilter filter;
+    private FrequencyTable frequency;
     private long wordsCount = 0;
 
+    // Буферы для векторной классификации: исходные байты (для буферов вне кучи) и символы в нижнем регистре
+    private final byte[] vectorBytes = VECTORIZED ? new byte[AsciiVectors.BYTE_LANES] : null;
+    private final byte[] loweredBytes = VECTORIZED ? new byte[AsciiVectors.BYTE_LANES] : null;
+    private final char[] loweredChars = VECTORIZED ? new char[AsciiVectors.CHAR_LANES] : null;
+
+    // Переиспользуемый буфер текущего слова и его хеш, считаемый по ходу разбора. С фильтром хеш по ходу
+    // разбора не считается: вместо него проходится дерево стоп-слов, а хеш считается один раз по итоговому слову
+    private char[] word = new char[64];
+    private int wordLength = 0;
+    private int wordHash = 0;
+    private int stopWordNode;
+
+    // Счётчики для статистики запуска, см. RunStatistics
+    private long bytesCount = 0;
+    private long readNanos = 0;
+    private long decodeNanos = 0;
+    private long parseNanos = 0;
+    private long mergeNanos = 0;
+    private long nextProgress = PROGRESS_BYTES;
+
     public FrequencyAnalyzer(InputStream inputStream) {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        reader.lines().forEach(this::parseLine);
+        this(inputStream, new Options());
     }
 
-    private void parseLine(String line) {
-        StringBuilder builder = new StringBuilder();
-        for (char c : line.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                builder.append(Character.toLowerCase(c));
-            } else if (!builder.isEmpty()) {
-                wordsCount++;
-                final String word = builder.toString();
-                if (!frequency.containsKey(word)) {
-                    frequency.put(word, 1L);
+    /**
+     * Обрабатывает поток.
+     * <p>
+     * При {@code options.threads > 1} поток обрабатывается конвейером: текущий поток читает блоки байтов
+     * в кольцо переиспользуемых буферов, а {@code options.threads} рабочих потоков разбирают блоки
+     * каждый в свой словарь. Блок обрезается по последнему разделителю, а хвост переносится в начало
+     * следующего блока, поэтому слово никогда не попадает в два блока.
+     *
+     * @param inputStream обрабатываемый поток в кодировке UTF-8
+     * @param options     параметры обработки
+     */
+    public FrequencyAnalyzer(InputStream inputStream, Options options) {
+        this(options);
+        try {
+            parseStream(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Обрабатывает файл.
+     * <p>
+     * При {@code options.threads > 1} файл делится на участки по границам слов,
+     * каждый участок считается в свой локальный словарь задачей {@link ForkJoinPool},
+     * после чего словари объединяются.
+     * <p>
+     * При {@code options.mapped} файл отображается в память через {@link FileChannel#map},
+     * и слова выделяются прямо из байтов UTF-8 без промежуточного декодирования строк.
+     * <p>
+     * Файл в формате gzip или zlib распаковывается в отдельном потоке и разбирается как поток,
+     * см. {@link CompressedInput}.
+     *
+     * @param file    обрабатываемый файл
+     * @param options параметры обработки
+     * @throws IOException если не удалось прочитать файл
+     */
+    public FrequencyAnalyzer(Path file, Options options) throws IOException {
+        this(options);
+        if (CompressedInput.isCompressed(file)) {
+            try (InputStream inputStream = CompressedInput.open(file)) {
+                parseStream(inputStream);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (options.threads <= 1) {
+                parseFile(channel, 0, size);
+                return;
+            }
+
+            try (ForkJoinPool pool = new ForkJoinPool(options.threads)) {
+                final long minRange = Math.max(BLOCK_SIZE, size / ((long) options.threads * TASKS_PER_THREAD));
+                final FrequencyAnalyzer result = pool.invoke(new CountTask(options, filter, channel, 0, size, minRange));
+                adopt(result);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Обрабатывает несколько файлов в пуле из {@code options.threads} потоков.
+     * <p>
+     * Мелкие файлы объединяются в пакеты примерно по {@link #BLOCK_SIZE} байт, и каждый пакет
+     * считается одной задачей в свой словарь, чтобы не платить за задачу на каждый файл.
+     * Крупный файл считается отдельной задачей и делится на участки так же, как в конструкторе для одного файла.
+     * Словари задач попарно сливаются.
+     *
+     * @param files   обрабатываемые файлы
+     * @param options параметры обработки
+     * @throws IOException если не удалось прочитать один из файлов
+     */
+    public FrequencyAnalyzer(List<Path> files, Options options) throws IOException {
+        this(options);
+        final List<FileRange> ranges = new ArrayList<>(files.size());
+        for (Path file : files) {
+            ranges.add(new FileRange(file, 0, Files.size(file)));
+        }
+        parseRanges(ranges);
+    }
+
+    /**
+     * Обрабатывает участки файлов так же, как {@link #FrequencyAnalyzer(List, Options)} обрабатывает файлы целиком.
+     * Границы участков должны приходиться на разделитель или на край файла; сжатые файлы разбираются целиком.
+     */
+    FrequencyAnalyzer(Options options, List<FileRange> ranges) throws IOException {
+        this(options);
+        parseRanges(ranges);
+    }
+
+    /**
+     * Участок файла [start, end).
+     */
+    record FileRange(Path file, long start, long end) {
+        long size() {
+            return end - start;
+        }
+    }
+
+    private void parseRanges(List<FileRange> ranges) throws IOException {
+        final int threads = Math.max(1, options.threads);
+        final List<List<FileRange>> batches = batch(ranges, threads);
+        if (batches.isEmpty()) {
+            return;
+        }
+        try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+            final FrequencyAnalyzer result = pool.invoke(new BatchesTask(options, filter, batches, 0, batches.size()));
+            adopt(result);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Делит участки на пакеты: участок не меньше {@link #BLOCK_SIZE} байт идёт отдельным пакетом,
+     * мелкие участки набираются в пакеты, пока их суммарный размер не достигнет порога.
+     */
+    private static List<List<FileRange>> batch(List<FileRange> ranges, int threads) {
+        long total = 0;
+        for (FileRange range : ranges) {
+            total += range.size();
+        }
+        // Порог пакета уменьшается для небольших корпусов, чтобы задач хватило на все потоки
+        final long batchSize = Math.clamp(total / ((long) threads * TASKS_PER_THREAD), MIN_BATCH_SIZE, BLOCK_SIZE);
+
+        final List<List<FileRange>> batches = new ArrayList<>();
+        List<FileRange> current = new ArrayList<>();
+        long currentSize = 0;
+        for (FileRange range : ranges) {
+            if (range.size() >= BLOCK_SIZE) {
+                batches.add(List.of(range));
+                continue;
+            }
+            current.add(range);
+            currentSize += range.size();
+            if (currentSize >= batchSize) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentSize = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    /**
+     * Создаёт пустой анализатор, в который текст передаётся по частям через {@link #parse(char[], int, int)}.
+     */
+    FrequencyAnalyzer(Options options) {
+        this(options, WordFilter.of(options));
+    }
+
+    /**
+     * Создаёт пустой анализатор с уже собранным фильтром: задачи одного запуска используют общий фильтр.
+     */
+    private FrequencyAnalyzer(Options options, WordFilter filter) {
+        this.options = options;
+        this.filter = filter;
+        this.frequency = createTable(options);
+        this.stopWordNode = filter != null ? filter.stopWordsRoot() : -1;
+    }
+
+    static FrequencyTable createTable(Options options) {
+        if (options.ngram > 0) {
+            return new NgramCounter(options.ngram);
+        }
+        if (options.approximate > 0) {
+            return new ApproximateCounter(options.approximate);
+        }
+        final Supplier<FrequencyTable> factory = options.offHeap ? OffHeapWordTable::new : WordCountTable::new;
+        if (options.memoryLimit <= 0) {
+            return factory.get();
+        }
+        // Параллельные задачи держат свои таблицы одновременно, поэтому предел делится между потоками
+        return new SpillingFrequencyTable(factory, options.memoryLimit / Math.max(1, options.threads));
+    }
+
+    /**
+     * Разбирает поток: последовательно или конвейером, если задано больше одного потока.
+     */
+    private void parseStream(InputStream inputStream) throws IOException {
+        // Блоки конвейера разбираются не по порядку, поэтому N-граммы считаются последовательно
+        if (options.threads > 1 && options.ngram == 0) {
+            parsePipelined(inputStream);
+            return;
+        }
+        final CountingInputStream counting = new CountingInputStream(inputStream);
+        final Reader reader = new InputStreamReader(counting, StandardCharsets.UTF_8);
+        final char[] buffer = new char[CHAR_BUFFER_SIZE];
+        final long bytesBefore = bytesCount;
+        long readerNanos = 0;
+        while (true) {
+            final long readStart = System.nanoTime();
+            final int read = reader.read(buffer);
+            final long parseStart = System.nanoTime();
+            readerNanos += parseStart - readStart;
+            if (read < 0) {
+                break;
+            }
+            parse(buffer, 0, read);
+            parseNanos += System.nanoTime() - parseStart;
+            bytesCount = bytesBefore + counting.count;
+            progress();
+        }
+        endWord();
+        // Время чтения символов складывается из чтения байтов из потока и их декодирования
+        readNanos += counting.nanos;
+        decodeNanos += readerNanos - counting.nanos;
+    }
+
+    /**
+     * Конвейерная обработка потока, см. {@link #FrequencyAnalyzer(InputStream, Options)}.
+     */
+    private void parsePipelined(InputStream inputStream) {
+        final int workers = options.threads;
+        // Кольцо свободных буферов и очередь заполненных блоков (с местом под метки конца для каждого потока)
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<>(workers * BLOCKS_PER_THREAD);
+        final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(workers * (BLOCKS_PER_THREAD + 1));
+        for (int i = 0; i < workers * BLOCKS_PER_THREAD; i++) {
+            free.add(new Block(STREAM_BLOCK_SIZE));
+        }
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(workers)) {
+            final List<Future<FrequencyAnalyzer>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> countBlocks(filled, free)));
+            }
+            try {
+                readBlocks(inputStream, free, filled);
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    filled.put(Block.END);
+                }
+            }
+
+            FrequencyAnalyzer result = results.getFirst().get();
+            for (int i = 1; i < workers; i++) {
+                result = result.merge(results.get(i).get());
+            }
+            adopt(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Обработка потока прервана"));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Читает поток блоками: заполняет буфер целиком, отдаёт рабочим потокам часть до последнего разделителя,
+     * а остаток копирует в начало следующего буфера. Если в буфере нет ни одного разделителя, он увеличивается.
+     */
+    private void readBlocks(InputStream inputStream, BlockingQueue<Block> free, BlockingQueue<Block> filled)
+            throws IOException, InterruptedException {
+        Block block = free.take();
+        int length = 0;
+        while (true) {
+            final long readStart = System.nanoTime();
+            final int read = inputStream.read(block.data, length, block.data.length - length);
+            readNanos += System.nanoTime() - readStart;
+            if (read < 0) {
+                if (length > 0) {
+                    block.length = length;
+                    filled.put(block);
                 } else {
-                    frequency.put(word, frequency.get(word) + 1);
+                    free.put(block);
+                }
+                return;
+            }
+            length += read;
+            bytesCount += read;
+            if (length < block.data.length) {
+                continue;
+            }
+
+            final int cut = cutAtSeparator(ByteBuffer.wrap(block.data), length);
+            if (cut == length && !isSeparator(block.data[length - 1])) {
+                block.data = Arrays.copyOf(block.data, block.data.length * 2);
+                continue;
+            }
+
+            final Block next = free.take();
+            final int tail = length - cut;
+            if (next.data.length < tail * 2) {
+                next.data = new byte[tail * 2];
+            }
+            System.arraycopy(block.data, cut, next.data, 0, tail);
+            block.length = cut;
+            filled.put(block);
+            block = next;
+            length = tail;
+        }
+    }
+
+    /**
+     * Цикл рабочего потока: разбирает блоки в свой словарь до метки конца и возвращает буферы в кольцо.
+     * После ошибки блоки продолжают забираться из очереди, чтобы читающий поток не заблокировался.
+     */
+    private FrequencyAnalyzer countBlocks(BlockingQueue<Block> filled, BlockingQueue<Block> free)
+            throws InterruptedException {
+        final FrequencyAnalyzer local = new FrequencyAnalyzer(options, filter);
+        RuntimeException failure = null;
+        Block block;
+        while ((block = filled.take()) != Block.END) {
+            try {
+                if (failure == null) {
+                    final long parseStart = System.nanoTime();
+                    local.parse(ByteBuffer.wrap(block.data), 0, block.length);
+                    local.parseNanos += System.nanoTime() - parseStart;
                 }
-                builder = new StringBuilder();
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                free.put(block);
             }
         }
-        if (!builder.isEmpty()) {
-            wordsCount++;
-            final String word = builder.toString();
-            if (!frequency.containsKey(word)) {
-                frequency.put(word, 1L);
+        if (failure != null) {
+            throw failure;
+        }
+        return local;
+    }
+
+    /**
+     * Разбирает символы {@code chars} в диапазоне [from, to).
+     * Слово, не закончившееся к концу диапазона, продолжается при следующем вызове.
+     * Если доступен Vector API, ASCII-символы классифицируются векторно; с не-ASCII символа разбор идёт
+     * обычным путём до ближайшей буквы или цифры ASCII, с которой снова продолжается векторно.
+     */
+    void parse(char[] chars, int from, int to) {
+        int i = from;
+        if (VECTORIZED) {
+            final int lanes = AsciiVectors.CHAR_LANES;
+            while (i + lanes <= to) {
+                final long classified = AsciiVectors.classify(chars, i, loweredChars);
+                final int ascii = AsciiVectors.asciiLanes(classified);
+                appendRuns(AsciiVectors.wordMask(classified), ascii, loweredChars);
+                i += ascii;
+                if (ascii < lanes) {
+                    do {
+                        parseChar(chars[i++]);
+                    } while (i < to && (chars[i] >= ASCII_WORD_CHARS.length || ASCII_WORD_CHARS[chars[i]] == 0));
+                }
+            }
+        }
+        for (; i < to; i++) {
+            parseChar(chars[i]);
+        }
+    }
+
+    private void parseChar(char c) {
+        if (c < ASCII_WORD_CHARS.length) {
+            final char lower = ASCII_WORD_CHARS[c];
+            if (lower != 0) {
+                appendChar(lower);
             } else {
-                frequency.put(word, frequency.get(word) + 1);
+                endWord();
             }
+        } else if (Character.isLetterOrDigit(c)) {
+            appendChar(Character.toLowerCase(c));
+        } else {
+            endWord();
         }
     }
 
-    public Map<String, Long> getFrequency() {
+    /**
+     * Разбирает байты UTF-8 из {@code bytes} в диапазоне [from, to).
+     * ASCII-символы классифицируются по таблице или векторно (как в {@link #parse(char[], int, int)}),
+     * многобайтовые последовательности
+     * декодируются на месте; некорректные последовательности считаются разделителями,
+     * как и символы вне BMP (так же ведёт себя разбор по {@code char}).
+     */
+    private void parse(ByteBuffer bytes, int from, int to) {
+        int i = from;
+        if (VECTORIZED) {
+            final int lanes = AsciiVectors.BYTE_LANES;
+            final byte[] array = bytes.hasArray() ? bytes.array() : null;
+            final int arrayOffset = array != null ? bytes.arrayOffset() : 0;
+            while (i + lanes <= to) {
+                final long classified;
+                if (array != null) {
+                    classified = AsciiVectors.classify(array, arrayOffset + i, loweredBytes);
+                } else {
+                    bytes.get(i, vectorBytes, 0, lanes);
+                    classified = AsciiVectors.classify(vectorBytes, 0, loweredBytes);
+                }
+
+                final int ascii = AsciiVectors.asciiLanes(classified);
+                appendRuns(AsciiVectors.wordMask(classified), ascii, loweredBytes);
+                i += ascii;
+                if (ascii < lanes) {
+                    do {
+                        i = parseChar(bytes, i, to);
+                    } while (i < to && isNonAsciiOrSeparator(bytes.get(i)));
+                }
+            }
+        }
+        while (i < to) {
+            i = parseChar(bytes, i, to);
+        }
+        endWord();
+    }
+
+    /**
+     * Разбирает один символ UTF-8, начинающийся в позиции {@code i}, и возвращает позицию следующего.
+     */
+    private int parseChar(ByteBuffer bytes, int i, int to) {
+        final byte b = bytes.get(i);
+        char c;
+        if (b >= 0) {
+            c = ASCII_WORD_CHARS[b];
+            i++;
+        } else {
+            c = 0;
+            final int b0 = b & 0xFF;
+            if (b0 >= 0xC2 && b0 <= 0xDF && i + 1 < to) {
+                final int b1 = bytes.get(i + 1) & 0xFF;
+                if ((b1 & 0xC0) == 0x80) {
+                    c = (char) (((b0 & 0x1F) << 6) | (b1 & 0x3F));
+                    i += 2;
+                }
+            } else if (b0 >= 0xE0 && b0 <= 0xEF && i + 2 < to) {
+                final int b1 = bytes.get(i + 1) & 0xFF;
+                final int b2 = bytes.get(i + 2) & 0xFF;
+                if ((b1 & 0xC0) == 0x80 && (b2 & 0xC0) == 0x80
+                        && (b0 != 0xE0 || b1 >= 0xA0) && (b0 != 0xED || b1 < 0xA0)) {
+                    c = (char) (((b0 & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (b2 & 0x3F));
+                    i += 3;
+                }
+            }
+            if (c == 0) {
+                i++; // некорректная последовательность или символ вне BMP
+            } else if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+            } else {
+                c = 0;
+            }
+        }
+
+        if (c != 0) {
+            appendChar(c);
+        } else {
+            endWord();
+        }
+        return i;
+    }
+
+    /**
+     * Разбирает {@code lanes} классифицированных символов: бит маски означает символ слова,
+     * {@code lowered} - символы в нижнем регистре. Серии символов слова дописываются к текущему слову целиком.
+     */
+    private void appendRuns(long mask, int lanes, char[] lowered) {
+        int k = 0;
+        while (k < lanes) {
+            final long rest = mask >>> k;
+            if ((rest & 1) == 0) {
+                endWord();
+                k = rest == 0 ? lanes : k + Long.numberOfTrailingZeros(rest);
+                continue;
+            }
+            final int end = Math.min(lanes, k + Long.numberOfTrailingZeros(~rest));
+            ensureWordCapacity(end - k);
+            if (filter != null) {
+                for (int j = k; j < end; j++) {
+                    appendFiltered(lowered[j]);
+                }
+                k = end;
+                continue;
+            }
+            int length = wordLength;
+            int hash = wordHash;
+            for (int j = k; j < end; j++) {
+                final char c = lowered[j];
+                word[length++] = c;
+                hash = 31 * hash + c;
+            }
+            wordLength = length;
+            wordHash = hash;
+            k = end;
+        }
+    }
+
+    private void appendRuns(long mask, int lanes, byte[] lowered) {
+        int k = 0;
+        while (k < lanes) {
+            final long rest = mask >>> k;
+            if ((rest & 1) == 0) {
+                endWord();
+                k = rest == 0 ? lanes : k + Long.numberOfTrailingZeros(rest);
+                continue;
+            }
+            final int end = Math.min(lanes, k + Long.numberOfTrailingZeros(~rest));
+            ensureWordCapacity(end - k);
+            if (filter != null) {
+                for (int j = k; j < end; j++) {
+                    appendFiltered((char) lowered[j]);
+                }
+                k = end;
+                continue;
+            }
+            int length = wordLength;
+            int hash = wordHash;
+            for (int j = k; j < end; j++) {
+                final char c = (char) lowered[j];
+                word[length++] = c;
+                hash = 31 * hash + c;
+            }
+            wordLength = length;
+            wordHash = hash;
+            k = end;
+        }
+    }
+
+    private void ensureWordCapacity(int extra) {
+        if (wordLength + extra > word.length) {
+            word = Arrays.copyOf(word, Math.max(word.length * 2, wordLength + extra));
+        }
+    }
+
+    private void appendChar(char c) {
+        if (wordLength == word.length) {
+            word = Arrays.copyOf(word, wordLength * 2);
+        }
+        if (filter != null) {
+            appendFiltered(c);
+            return;
+        }
+        word[wordLength++] = c;
+        wordHash = 31 * wordHash + c;
+    }
+
+    /**
+     * Дописывает символ к слову при включённом фильтре: вместо хеша продвигается проход по дереву стоп-слов,
+     * который прекращается, как только слово перестаёт быть началом какого-либо стоп-слова.
+     */
+    private void appendFiltered(char c) {
+        word[wordLength++] = c;
+        if (stopWordNode >= 0) {
+            stopWordNode = filter.nextStopWordNode(stopWordNode, c);
+        }
+    }
+
+    /**
+     * Завершает текущее слово, если оно не пустое, и учитывает его.
+     * Строка для слова создаётся только при первом его появлении.
+     * Слово, отброшенное фильтром, не учитывается и в общем количестве слов.
+     */
+    void endWord() {
+        if (wordLength == 0) {
+            return;
+        }
+        if (filter != null && !applyFilter()) {
+            return;
+        }
+        wordsCount++;
+        frequency.increment(word, wordLength, wordHash);
+        wordLength = 0;
+        wordHash = 0;
+    }
+
+    /**
+     * Применяет фильтр к текущему слову; хеш считается один раз по слову после отсечения окончания.
+     *
+     * @return {@code false}, если слово отброшено
+     */
+    private boolean applyFilter() {
+        final int length = filter.apply(word, wordLength, stopWordNode);
+        stopWordNode = filter.stopWordsRoot();
+        if (length == 0) {
+            wordLength = 0;
+            return false;
+        }
+        wordLength = length;
+        wordHash = FrequencyTable.hash(word, length);
+        return true;
+    }
+
+    /**
+     * Разбирает участок файла [start, end), границы которого приходятся на разделитель или на край файла.
+     */
+    private void parseFile(FileChannel channel, long start, long end) throws IOException {
+        if (options.mapped) {
+            parseMapped(channel, start, end);
+        } else {
+            parseDecoded(channel, start, end);
+        }
+    }
+
+    /**
+     * Разбирает участок файла, отображая его в память окнами по {@link #MAP_WINDOW_SIZE} байт.
+     */
+    private void parseMapped(FileChannel channel, long start, long end) throws IOException {
+        long position = start;
+        while (position < end) {
+            final int windowSize = (int) Math.min(MAP_WINDOW_SIZE, end - position);
+            final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            final int length = position + windowSize < end ? cutAtSeparator(window, windowSize) : windowSize;
+            // Страницы отображения читаются с диска при первом обращении, поэтому чтение входит во время разбора
+            final long parseStart = System.nanoTime();
+            parse(window, 0, length);
+            parseNanos += System.nanoTime() - parseStart;
+            bytesCount += length;
+            position += length;
+            progress();
+        }
+    }
+
+    /**
+     * Разбирает участок файла, читая его блоками по {@link #BLOCK_SIZE} байт и декодируя их в символы.
+     */
+    private void parseDecoded(FileChannel channel, long start, long end) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE, end - start));
+        final CharBuffer chars = CharBuffer.allocate(bytes.capacity());
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        long position = start;
+        while (position < end) {
+            final long readStart = System.nanoTime();
+            bytes.clear().limit((int) Math.min(bytes.capacity(), end - position));
+            while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) > 0) {
+                // читаем блок целиком
+            }
+            bytes.flip();
+            final long decodeStart = System.nanoTime();
+            readNanos += decodeStart - readStart;
+            if (!bytes.hasRemaining()) {
+                break; // файл оказался короче, чем ожидалось
+            }
+
+            final int length = position + bytes.limit() < end ? cutAtSeparator(bytes, bytes.limit()) : bytes.limit();
+            bytes.limit(length);
+
+            chars.clear();
+            decoder.reset();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            final long parseStart = System.nanoTime();
+            decodeNanos += parseStart - decodeStart;
+            parse(chars.array(), 0, chars.position());
+            endWord();
+            parseNanos += System.nanoTime() - parseStart;
+            bytesCount += length;
+            position += length;
+            progress();
+        }
+    }
+
+    /**
+     * Возвращает длину начала блока до последнего разделителя включительно,
+     * чтобы слово не попало в два соседних блока. Если разделителя нет, блок берётся целиком.
+     */
+    private static int cutAtSeparator(ByteBuffer bytes, int length) {
+        int last = length - 1;
+        while (last >= 0 && !isSeparator(bytes.get(last))) {
+            last--;
+        }
+        return last >= 0 ? last + 1 : length;
+    }
+
+    /**
+     * Добавляет к текущей статистике статистику другого анализатора.
+     *
+     * @return анализатор, в который были слиты данные
+     */
+    private FrequencyAnalyzer merge(FrequencyAnalyzer other) {
+        if (other.frequency.memoryUsage() > frequency.memoryUsage()) {
+            return other.merge(this);
+        }
+        final long mergeStart = System.nanoTime();
+        frequency.addAll(other.frequency);
+        wordsCount += other.wordsCount;
+        addCounters(other);
+        mergeNanos += System.nanoTime() - mergeStart;
+        return this;
+    }
+
+    /**
+     * Добавляет к текущей статистике статистику анализатора, разобравшего следующий участок того же текста.
+     * В режиме N-грамм дополнительно учитываются N-граммы на стыке участков.
+     *
+     * @return анализатор, в который были слиты данные
+     */
+    private FrequencyAnalyzer append(FrequencyAnalyzer next) {
+        if (!(frequency instanceof NgramCounter ngrams)) {
+            return merge(next);
+        }
+        final long mergeStart = System.nanoTime();
+        ngrams.append((NgramCounter) next.frequency);
+        wordsCount += next.wordsCount;
+        addCounters(next);
+        mergeNanos += System.nanoTime() - mergeStart;
+        return this;
+    }
+
+    /**
+     * Забирает результат задачи, посчитавшей весь вход этого анализатора.
+     */
+    private void adopt(FrequencyAnalyzer result) {
+        frequency = result.frequency;
+        wordsCount = result.wordsCount;
+        addCounters(result);
+    }
+
+    private void addCounters(FrequencyAnalyzer other) {
+        bytesCount += other.bytesCount;
+        readNanos += other.readNanos;
+        decodeNanos += other.decodeNanos;
+        parseNanos += other.parseNanos;
+        mergeNanos += other.mergeNanos;
+    }
+
+    /**
+     * Записывает событие о ходе разбора каждые {@link #PROGRESS_BYTES} байт.
+     */
+    private void progress() {
+        if (bytesCount >= nextProgress) {
+            nextProgress = bytesCount + PROGRESS_BYTES;
+            RunStatistics.progress(bytesCount, wordsCount, frequency, readNanos + decodeNanos + parseNanos);
+        }
+    }
+
+    /**
+     * Отмечает конец документа: в режиме N-грамм следующий документ начинает новую последовательность.
+     */
+    private void endDocument() {
+        if (frequency instanceof NgramCounter ngrams) {
+            ngrams.breakSequence();
+        }
+    }
+
+    /**
+     * Байт является разделителем слов, если это ASCII-символ, не являющийся буквой или цифрой.
+     * В UTF-8 такие байты не встречаются внутри многобайтовых последовательностей,
+     * поэтому по ним файл можно безопасно резать на участки.
+     */
+    private static boolean isSeparator(byte b) {
+        return b >= 0 && ASCII_WORD_CHARS[b] == 0;
+    }
+
+    private static boolean isNonAsciiOrSeparator(byte b) {
+        return b < 0 || ASCII_WORD_CHARS[b] == 0;
+    }
+
+    /**
+     * Возвращает позицию сразу после последнего разделителя в [from, end) или {@code from}, если разделителей нет.
+     * Байты от этой позиции до {@code end} - незаконченное слово, которое может продолжиться при дописывании файла.
+     */
+    static long lastWordBoundary(FileChannel channel, long from, long end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = end;
+        while (position > from) {
+            final int length = (int) Math.min(buffer.capacity(), position - from);
+            buffer.clear().limit(length);
+            while (buffer.hasRemaining() && channel.read(buffer, position - length + buffer.position()) > 0) {
+                // читаем блок целиком
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (isSeparator(buffer.get(i))) {
+                    return position - length + i + 1;
+                }
+            }
+            position -= length;
+        }
+        return from;
+    }
+
+    /**
+     * Возвращает позицию первого разделителя, начиная с {@code position}, или {@code end}, если его нет.
+     */
+    static long findSeparator(FileChannel channel, long position, long end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return end;
+            }
+            for (int i = 0; i < read; i++) {
+                if (isSeparator(buffer.get(i))) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Задача подсчёта слов на участке файла [start, end).
+     * Границы участка всегда приходятся на разделитель или на край файла.
+     */
+    private static final class CountTask extends RecursiveTask<FrequencyAnalyzer> {
+        private final Options options;
+        private final WordFilter filter;
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long minRange;
+
+        CountTask(Options options, WordFilter filter, FileChannel channel, long start, long end, long minRange) {
+            this.options = options;
+            this.filter = filter;
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.minRange = minRange;
+        }
+
+        @Override
+        protected FrequencyAnalyzer compute() {
+            try {
+                if (end - start > minRange) {
+                    final long middle = findSeparator(channel, start + (end - start) / 2, end);
+                    if (middle < end) {
+                        final CountTask left = new CountTask(options, filter, channel, start, middle, minRange);
+                        final CountTask right = new CountTask(options, filter, channel, middle, end, minRange);
+                        left.fork();
+                        final FrequencyAnalyzer rightResult = right.compute();
+                        return left.join().append(rightResult);
+                    }
+                }
+                final FrequencyAnalyzer local = new FrequencyAnalyzer(options, filter);
+                local.parseFile(channel, start, end);
+                return local;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Поток, который считает прочитанные байты и время, проведённое в чтении.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+        long nanos = 0;
+
+        CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            final int b = super.read();
+            nanos += System.nanoTime() - start;
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final long start = System.nanoTime();
+            final int read = super.read(buffer, offset, length);
+            nanos += System.nanoTime() - start;
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Буфер блока потока; {@link #length} - количество байтов, которые нужно разобрать.
+     */
+    private static final class Block {
+        // Метка конца потока для рабочих потоков
+        static final Block END = new Block(0);
+
+        byte[] data;
+        int length;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * Задача подсчёта слов в пакетах участков файлов [from, to): диапазон делится пополам, пока не останется один пакет.
+     */
+    private static final class BatchesTask extends RecursiveTask<FrequencyAnalyzer> {
+        private final Options options;
+        private final WordFilter filter;
+        private final List<List<FileRange>> batches;
+        private final int from;
+        private final int to;
+
+        BatchesTask(Options options, WordFilter filter, List<List<FileRange>> batches, int from, int to) {
+            this.options = options;
+            this.filter = filter;
+            this.batches = batches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected FrequencyAnalyzer compute() {
+            if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                final BatchesTask left = new BatchesTask(options, filter, batches, from, middle);
+                left.fork();
+                final FrequencyAnalyzer rightResult = new BatchesTask(options, filter, batches, middle, to).compute();
+                return left.join().merge(rightResult);
+            }
+
+            try {
+                final List<FileRange> batch = batches.get(from);
+                final FileRange first = batch.getFirst();
+                if (batch.size() == 1 && !CompressedInput.isCompressed(first.file())) {
+                    try (FileChannel channel = FileChannel.open(first.file(), StandardOpenOption.READ)) {
+                        final long tasks = (long) Math.max(1, options.threads) * TASKS_PER_THREAD;
+                        final long minRange = Math.max(BLOCK_SIZE, first.size() / tasks);
+                        return new CountTask(options, filter, channel, first.start(), first.end(), minRange)
+                                .compute();
+                    }
+                }
+                final FrequencyAnalyzer local = new FrequencyAnalyzer(options, filter);
+                for (FileRange range : batch) {
+                    if (CompressedInput.isCompressed(range.file())) {
+                        try (InputStream inputStream = CompressedInput.open(range.file())) {
+                            local.parseStream(inputStream);
+                        }
+                    } else {
+                        try (FileChannel channel = FileChannel.open(range.file(), StandardOpenOption.READ)) {
+                            local.parseFile(channel, range.start(), range.end());
+                        }
+                    }
+                    local.endDocument();
+                }
+                return local;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Передаёт пары "слово → количество" в {@code consumer} с учётом {@code options.top} и {@code options.sort}.
+     * Без этих опций слова выдаются в порядке словаря без создания промежуточных строк.
+     */
+    <E extends Exception> void forEachWord(FrequencyTable.EntryConsumer<E> consumer) throws E {
+        WordRanking.forEach(frequency, options.top, options.sort, options.threads > 1, consumer);
+    }
+
+    /**
+     * Добавляет к статистике счётчики таблицы и количество слов, по которым она посчитана.
+     */
+    void addAll(FrequencyTable table, long words) {
+        frequency.addAll(table);
+        wordsCount += words;
+    }
+
+    FrequencyTable getTable() {
         return frequency;
     }
 
+    /**
+     * Количество разобранных байтов входа (для сжатых файлов - после распаковки).
+     */
+    long getBytesCount() {
+        return bytesCount;
+    }
+
+    /**
+     * Время чтения входа в наносекундах, суммарно по всем потокам.
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Время декодирования UTF-8 в наносекундах, суммарно по всем потокам.
+     * При разборе байтов напрямую декодирование входит во время разбора.
+     */
+    long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Время разбора слов и обновления словаря в наносекундах, суммарно по всем потокам.
+     */
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Время слияния словарей задач в наносекундах, суммарно по всем потокам.
+     */
+    long getMergeNanos() {
+        return mergeNanos;
+    }
+
+    /**
+     * Отдаёт накопленную таблицу и начинает новую; незаконченное слово остаётся и попадёт в новую таблицу.
+     */
+    FrequencyTable takeTable() {
+        final FrequencyTable table = frequency;
+        frequency = createTable(options);
+        return table;
+    }
+
+    public Map<String, Long> getFrequency() {
+        return frequency.asMap();
+    }
+
     public long getWordsCount() {
         return wordsCount;
     }
+
+    /**
+     * Возвращает количество учтённых элементов: слов, а в режиме N-грамм - N-грамм.
+     */
+    public long getTotalCount() {
+        return frequency instanceof NgramCounter ngrams ? ngrams.total() : wordsCount;
+    }
+
+    /**
+     * Возвращает количество различных слов; при приближённом подсчёте - его оценку.
+     */
+    public long getDistinctWordsCount() {
+        return frequency.size();
+    }
+
+    /**
+     * Возвращает максимальную ошибку выдаваемых частот: 0 при точном подсчёте.
+     */
+    public long getFrequencyError() {
+        return frequency instanceof ApproximateCounter counter ? counter.errorBound() : 0;
+    }
 }
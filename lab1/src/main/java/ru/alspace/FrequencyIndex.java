@@ -0,0 +1,233 @@
+package ru.alspace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Двоичный индекс частот, который читается через отображение в память без разбора.
+ * <p>
+ * Формат: заголовок ({@link #MAGIC}, {@link #VERSION}, количество слов, общее количество слов в тексте),
+ * массив счётчиков, массив смещений слов (на одно больше, чем слов) и слова в UTF-8, отсортированные по байтам.
+ * Слова состоят из символов BMP, поэтому порядок байтов UTF-8 совпадает с порядком {@link String#compareTo}.
+ * Поиск слова и начала диапазона по префиксу - двоичный поиск по массиву смещений.
+ * <p>
+ * Индекс отображается в память одним буфером, поэтому его размер ограничен 2 ГБ. Запись идёт потоково:
+ * счётчики сразу пишутся в файл индекса, смещения и слова - во временные файлы рядом, которые затем
+ * дописываются в конец, а количество слов записывается в заголовок последним.
+ */
+final class FrequencyIndex {
+    private static final int MAGIC = 0x4C31495A; // "L1IX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final long totalCount;
+    private final int countsStart;
+    private final int offsetsStart;
+    private final int wordsStart;
+
+    private FrequencyIndex(MappedByteBuffer buffer, int size, long totalCount) {
+        this.buffer = buffer;
+        this.size = size;
+        this.totalCount = totalCount;
+        this.countsStart = HEADER_SIZE;
+        // Размеры разделов проверены в open, поэтому смещения помещаются в int
+        this.offsetsStart = (int) (countsStart + (long) size * Long.BYTES);
+        this.wordsStart = (int) (offsetsStart + (size + 1L) * Long.BYTES);
+    }
+
+    /**
+     * Записывает индекс по словарю анализатора.
+     *
+     * @param file     файл индекса
+     * @param analyzer анализатор с посчитанной статистикой
+     * @throws IOException если не удалось записать файл или индекс получается больше 2 ГБ
+     */
+    static void write(Path file, FrequencyAnalyzer analyzer) throws IOException {
+        final Path absolute = file.toAbsolutePath();
+        final Path offsetsFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        final Path wordsFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        boolean written = false;
+        try {
+            final long[] size = {0};
+            try (DataOutputStream output = openOutput(file);
+                 DataOutputStream offsets = openOutput(offsetsFile);
+                 DataOutputStream words = openOutput(wordsFile)) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(0); // количество слов записывается в конце
+                output.writeLong(analyzer.getTotalCount());
+
+                final long[] offset = {0};
+                final long[] fileSize = {HEADER_SIZE + Long.BYTES};
+                offsets.writeLong(0);
+                WordRanking.forEach(analyzer.getTable(), 0, Options.Sort.ALPHABET, true, (chars, length, count) -> {
+                    final byte[] bytes = new String(chars, 0, length).getBytes(StandardCharsets.UTF_8);
+                    fileSize[0] += 2 * Long.BYTES + bytes.length;
+                    if (fileSize[0] > Integer.MAX_VALUE) {
+                        throw new IOException("Индекс `" + file + "` больше 2 ГБ не поддерживается");
+                    }
+                    output.writeLong(count);
+                    offset[0] += bytes.length;
+                    offsets.writeLong(offset[0]);
+                    words.write(bytes);
+                    size[0]++;
+                });
+                words.flush();
+                offsets.flush();
+                Files.copy(offsetsFile, output);
+                Files.copy(wordsFile, output);
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, size[0]), 8);
+            }
+            written = true;
+        } finally {
+            Files.deleteIfExists(offsetsFile);
+            Files.deleteIfExists(wordsFile);
+            if (!written) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static DataOutputStream openOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE));
+    }
+
+    /**
+     * Открывает индекс, отображая его в память.
+     *
+     * @throws IOException если файл не удалось прочитать или он не является индексом
+     */
+    static FrequencyIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Индекс `" + file + "` больше 2 ГБ не поддерживается");
+            }
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Файл `" + file + "` не является индексом частот");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Файл `" + file + "` не является индексом частот");
+            }
+            final long size = buffer.getLong(8);
+            if (size < 0 || HEADER_SIZE + (2 * size + 1) * Long.BYTES > channel.size()) {
+                throw new IOException("Файл `" + file + "` не является индексом частот");
+            }
+            return new FrequencyIndex(buffer, (int) size, buffer.getLong(16));
+        }
+    }
+
+    /**
+     * Количество слов в индексе.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Общее количество слов в тексте, по которому построен индекс.
+     */
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Возвращает частоту слова или 0, если слова нет в индексе.
+     */
+    long get(String word) {
+        final byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        final int index = lowerBound(key);
+        return index < size && compare(index, key) == 0 ? count(index) : 0;
+    }
+
+    /**
+     * Передаёт в {@code consumer} все слова с заданным префиксом в алфавитном порядке.
+     */
+    <E extends Exception> void forEachWithPrefix(String prefix, FrequencyTable.EntryConsumer<E> consumer) throws E {
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        char[] chars = new char[64];
+        for (int index = lowerBound(key); index < size && startsWith(index, key); index++) {
+            final String word = word(index);
+            if (word.length() > chars.length) {
+                chars = new char[Math.max(word.length(), chars.length * 2)];
+            }
+            word.getChars(0, word.length(), chars, 0);
+            consumer.accept(chars, word.length(), count(index));
+        }
+    }
+
+    /**
+     * Индекс первого слова, которое не меньше {@code key}.
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (compare(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Сравнивает слово с номером {@code index} с {@code key} побайтно без знака.
+     */
+    private int compare(int index, byte[] key) {
+        final int start = wordStart(index);
+        final int length = wordStart(index + 1) - start;
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            final int difference = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private boolean startsWith(int index, byte[] prefix) {
+        final int start = wordStart(index);
+        if (wordStart(index + 1) - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String word(int index) {
+        final int start = wordStart(index);
+        final byte[] bytes = new byte[wordStart(index + 1) - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long count(int index) {
+        return buffer.getLong((int) (countsStart + (long) index * Long.BYTES));
+    }
+
+    private int wordStart(int index) {
+        return (int) (wordsStart + buffer.getLong((int) (offsetsStart + (long) index * Long.BYTES)));
+    }
+}
@@ -0,0 +1,85 @@
+package ru.alspace;
+
+import java.util.Map;
+
+/**
+ * Хранилище счётчиков "слово → количество".
+ * <p>
+ * Слова передаются в виде буфера символов и хеша, посчитанного по формуле {@link String#hashCode()},
+ * чтобы реализация могла найти слово без создания строки.
+ */
+interface FrequencyTable {
+    /**
+     * Добавляет {@code count} к счётчику слова {@code chars[0..length)}.
+     *
+     * @param chars  буфер с символами слова
+     * @param length длина слова
+     * @param hash   хеш слова, совпадающий с {@link String#hashCode()}
+     * @param count  добавляемое количество
+     */
+    void add(char[] chars, int length, int hash, long count);
+
+    /**
+     * Увеличивает на единицу счётчик слова {@code chars[0..length)}.
+     */
+    default void increment(char[] chars, int length, int hash) {
+        add(chars, length, hash, 1);
+    }
+
+    /**
+     * Возвращает количество для слова или 0, если слово не встречалось.
+     */
+    long get(String word);
+
+    /**
+     * Возвращает количество различных слов.
+     */
+    long size();
+
+    /**
+     * Возвращает приблизительный объём памяти, занятой таблицей, в байтах.
+     */
+    long memoryUsage();
+
+    /**
+     * Передаёт все пары "слово → количество" в {@code consumer}.
+     * Буфер символов, передаваемый в {@code consumer}, может переиспользоваться между вызовами.
+     */
+    <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E;
+
+    /**
+     * Передаёт все пары "слово → количество" в {@code consumer} в алфавитном порядке ({@link String#compareTo}).
+     * Таблицы в памяти сортируют номера своих записей и выдают слова прямо из своего хранилища.
+     */
+    default <E extends Exception> void forEachSorted(EntryConsumer<E> consumer) throws E {
+        WordRanking.forEach(this, 0, Options.Sort.ALPHABET, false, consumer);
+    }
+
+    /**
+     * Добавляет к этой таблице все счётчики другой таблицы.
+     */
+    default void addAll(FrequencyTable other) {
+        other.forEach((chars, length, count) -> add(chars, length, hash(chars, length), count));
+    }
+
+    /**
+     * Возвращает представление таблицы в виде неизменяемого {@link Map}.
+     */
+    Map<String, Long> asMap();
+
+    /**
+     * Считает хеш слова по той же формуле, что и {@link String#hashCode()}.
+     */
+    static int hash(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer<E extends Exception> {
+        void accept(char[] chars, int length, long count) throws E;
+    }
+}
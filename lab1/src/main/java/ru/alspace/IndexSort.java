@@ -0,0 +1,85 @@
+package ru.alspace;
+
+/**
+ * Сортировка массива {@code long} (номеров ячеек или адресов записей) с заданным порядком без упаковки в объекты.
+ * <p>
+ * Быстрая сортировка с медианой из трёх и сортировкой вставками для коротких участков; рекурсия идёт
+ * в меньшую часть, поэтому глубина стека не больше логарифма от размера массива.
+ */
+final class IndexSort {
+    // Участки короче сортируются вставками
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private IndexSort() {
+    }
+
+    /**
+     * Порядок элементов.
+     */
+    @FunctionalInterface
+    interface Order {
+        int compare(long a, long b);
+    }
+
+    /**
+     * Сортирует {@code values[0..size)} в порядке {@code order}.
+     */
+    static void sort(long[] values, int size, Order order) {
+        sort(values, 0, size - 1, order);
+    }
+
+    private static void sort(long[] values, int low, int high, Order order) {
+        while (high - low >= INSERTION_THRESHOLD) {
+            final int middle = (low + high) >>> 1;
+            // Медиана из трёх ставится в середину и служит опорным элементом
+            if (order.compare(values[middle], values[low]) < 0) {
+                swap(values, middle, low);
+            }
+            if (order.compare(values[high], values[low]) < 0) {
+                swap(values, high, low);
+            }
+            if (order.compare(values[high], values[middle]) < 0) {
+                swap(values, high, middle);
+            }
+            final long pivot = values[middle];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (order.compare(values[i], pivot) < 0) {
+                    i++;
+                }
+                while (order.compare(values[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+
+            if (j - low < high - i) {
+                sort(values, low, j, order);
+                low = i;
+            } else {
+                sort(values, i, high, order);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            final long value = values[i];
+            int j = i - 1;
+            while (j >= low && order.compare(values[j], value) > 0) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    private static void swap(long[] values, int i, int j) {
+        final long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.alspace;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Раскрытие входных аргументов в список файлов.
+ * <p>
+ * Аргумент может быть обычным файлом, каталогом (берутся все файлы в нём и во вложенных каталогах)
+ * или шаблоном вида {@code corpus/**.txt}: шаблон сопоставляется с путями внутри
+ * его начальной части без спецсимволов.
+ */
+final class InputFiles {
+    private static final String GLOB_CHARS = "*?[{";
+
+    private InputFiles() {
+    }
+
+    /**
+     * Возвращает файлы для всех аргументов; файлы каталогов и шаблонов упорядочены по пути.
+     *
+     * @throws NoSuchFileException если аргумент не указывает ни на один файл
+     */
+    static List<Path> resolve(List<String> inputs) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            final List<Path> resolved = resolve(input);
+            if (resolved.isEmpty()) {
+                throw new NoSuchFileException(input);
+            }
+            files.addAll(resolved);
+        }
+        return files;
+    }
+
+    private static List<Path> resolve(String input) throws IOException {
+        final int glob = firstGlobChar(input);
+        if (glob < 0) {
+            final Path path = Path.of(input);
+            return Files.isDirectory(path) ? walk(path, null) : List.of(path);
+        }
+
+        // Обходим каталог, предшествующий первому компоненту пути со спецсимволами
+        final int separator = Math.max(input.lastIndexOf('/', glob), input.lastIndexOf('\\', glob));
+        final Path base = separator >= 0 ? Path.of(input.substring(0, separator + 1)) : Path.of("");
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        return walk(base, matcher);
+    }
+
+    private static List<Path> walk(Path directory, PathMatcher matcher) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher == null || matcher.matches(path))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (GLOB_CHARS.indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
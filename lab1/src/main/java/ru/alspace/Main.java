@@ -4,57 +4,141 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            logger.fatal("Неверное количество аргументов");
+        if (args.length > 0 && args[0].equals("query")) {
+            query(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 3 && args[0].equals("worker")) {
+            work(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
 
-            System.out.println("Запуск: java -jar lab1 ВХОДНОЙ_ФАЙЛ ВЫХОДНОЙ_ФАЙЛ");
-            System.out.println("  ВХОДНОЙ_ФАЙЛ - путь до обрабатываемого файла");
+            System.out.println(e.getMessage());
+            System.out.println("Запуск: java -jar lab1 [ОПЦИИ] ВХОД... ВЫХОДНОЙ_ФАЙЛ");
+            System.out.println("        java -jar lab1 query ИНДЕКС СЛОВО...");
+            System.out.println("  ВХОД - обрабатываемый файл, каталог или шаблон пути (например, corpus/**.txt),");
+            System.out.println("         либо - для чтения стандартного ввода");
             System.out.println("  ВЫХОДНОЙ_ФАЙЛ - путь до CSV файла со статистикой");
+            System.out.println("Опции:");
+            System.out.println("  --threads N - параллельная обработка в N потоков");
+            System.out.println("  --mmap - чтение файла через отображение в память");
+            System.out.println("  --off-heap - хранение словаря вне кучи (см. -XX:MaxDirectMemorySize)");
+            System.out.println("  --memory-limit МБ - предел памяти под словарь, сверх него словарь сбрасывается на диск");
+            System.out.println("  --ngram N - подсчёт N-грамм (последовательностей из N слов), N от 2 до 4");
+            System.out.println("  --top K - вывести только K самых частых слов");
+            System.out.println("  --sort freq|alpha - сортировка по убыванию частоты или по алфавиту");
+            System.out.println("  --approximate K - приближённый подсчёт в фиксированной памяти, выводятся K самых частых слов");
+            System.out.println("  --snapshot ФАЙЛ - сохранять статистику в снимок и при следующем запуске");
+            System.out.println("                    разбирать только новые файлы и дописанные данные");
+            System.out.println("  --index ФАЙЛ - дополнительно записать двоичный индекс для подкоманды query");
+            System.out.println("  --workers N - подсчёт в N дочерних процессах JVM со слиянием их результатов");
+            System.out.println("  --window МИН - скользящее окно за последние МИН минут: раз в интервал в выходной файл");
+            System.out.println("                 дописываются самые частые слова окна (--top, по умолчанию 10)");
+            System.out.println("  --interval С - интервал между отчётами окна в секундах, по умолчанию 10");
+            System.out.println("  --stop-words ФАЙЛ - не считать слова из файла (по одному в строке)");
+            System.out.println("  --stem - отсекать окончания, чтобы формы одного слова считались вместе");
+            System.out.println("  --cache КАТАЛОГ - кэш результатов по содержимому входа: для уже обработанного");
+            System.out.println("                    входа с теми же опциями результат копируется из кэша");
+            return;
+        }
+        if (options.window > 0) {
+            tail(options);
+            return;
+        }
+
+        final ResultCache cache = ResultCache.open(options);
+        if (cache != null && cache.restore()) {
             return;
         }
+        final boolean written = options.workers > 0 ? coordinate(options) : count(options);
+        if (written && cache != null) {
+            cache.store();
+        }
+    }
 
-        final String inputFile = args[0];
-        final String outputFile = args[1];
+    /**
+     * Подсчёт в текущей JVM.
+     *
+     * @return {@code true}, если все выходные файлы записаны
+     */
+    private static boolean count(Options options) {
+        final String inputFile = String.join(" ", options.inputFiles);
+        final String outputFile = options.outputFile;
 
-        final Map<String, Long> frequencies;
-        final long wordsCount;
-        try (FileInputStream fileInputStream = new FileInputStream(inputFile)) {
-            logger.info("Обработка файла `{}`", inputFile);
+        final RunStatistics statistics = new RunStatistics();
+        final FrequencyAnalyzer frequencyAnalyzer;
+        try {
+            logger.info("Обработка `{}`", inputFile);
 
-            FrequencyAnalyzer frequencyAnalyzer = new FrequencyAnalyzer(fileInputStream);
-            frequencies = frequencyAnalyzer.getFrequency();
-            wordsCount = frequencyAnalyzer.getWordsCount();
+            final RunStatistics.Timer timer = statistics.start("Разбор входа");
+            frequencyAnalyzer = analyze(options);
+            timer.end(frequencyAnalyzer.getBytesCount(), frequencyAnalyzer.getWordsCount(),
+                    RunStatistics.distinct(frequencyAnalyzer.getTable()));
+            statistics.record(frequencyAnalyzer);
         } catch (IOException e) {
             logger.error("Не удалось открыть входной файл `{}`", inputFile, e);
             System.out.println("Не удалось открыть входной файл");
-            return;
+            return false;
+        } catch (IllegalStateException e) {
+            // Переполнение таблиц счётчика; из рабочего потока исключение приходит обёрнутым
+            final Throwable cause = e.getCause() instanceof IllegalStateException wrapped ? wrapped : e;
+            logger.error("Не удалось посчитать статистику: {}", cause.getMessage());
+            System.out.println("Не удалось посчитать статистику: " + cause.getMessage());
+            return false;
         }
 
+        final RunStatistics.Timer csvTimer = statistics.start("Запись CSV");
         try (FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
             logger.info("Запись результата в файл `{}`", outputFile);
 
             // Write header
-            BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(fileOutputStream));
-            bufferedWriter.write("Слово, Частота, Частота (в %)");
+            final BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(fileOutputStream));
+            final boolean approximate = options.approximate > 0;
+            final String item = options.ngram > 0 ? options.ngram + "-грамма" : "Слово";
+            bufferedWriter.write(approximate
+                    ? item + ", Частота (оценка), Погрешность, Частота (в %)"
+                    : item + ", Частота, Частота (в %)");
             bufferedWriter.newLine();
 
             // Write lines
-            for (Map.Entry<String, Long> entry : frequencies.entrySet()) {
-                long frequency = entry.getValue();
-                long percentage = frequency * 100 / wordsCount;
+            final long totalCount = frequencyAnalyzer.getTotalCount();
+            final String error = String.valueOf(frequencyAnalyzer.getFrequencyError());
+            frequencyAnalyzer.forEachWord((word, length, frequency) -> {
+                long percentage = frequency * 100 / totalCount;
 
-                bufferedWriter.write(entry.getKey());
+                bufferedWriter.write(word, 0, length);
                 bufferedWriter.write(", ");
                 bufferedWriter.write(String.valueOf(frequency));
+                if (approximate) {
+                    bufferedWriter.write(", ");
+                    bufferedWriter.write(error);
+                }
                 bufferedWriter.write(", ");
                 bufferedWriter.write(String.valueOf(percentage));
                 bufferedWriter.newLine();
+            });
+
+            if (approximate) {
+                final long distinct = frequencyAnalyzer.getDistinctWordsCount();
+                logger.info("Оценка количества различных слов: {}", distinct);
+                bufferedWriter.write("Различных слов (оценка), ");
+                bufferedWriter.write(String.valueOf(distinct));
+                bufferedWriter.newLine();
             }
 
             bufferedWriter.flush();
@@ -62,6 +146,204 @@ public class Main {
         } catch (IOException e) {
             logger.error("Не удалось открыть выходной файл `{}`", outputFile, e);
             System.out.println("Не удалось открыть выходной файл");
+            return false;
+        }
+        csvTimer.end(new File(outputFile).length(), 0, 0);
+
+        if (options.index != null) {
+            try {
+                logger.info("Запись индекса в файл `{}`", options.index);
+                final RunStatistics.Timer indexTimer = statistics.start("Запись индекса");
+                FrequencyIndex.write(Path.of(options.index), frequencyAnalyzer);
+                indexTimer.end(new File(options.index).length(), 0, 0);
+            } catch (IOException e) {
+                logger.error("Не удалось записать индекс `{}`", options.index, e);
+                System.out.println("Не удалось записать индекс");
+                return false;
+            }
+        }
+        statistics.logSummary();
+        return true;
+    }
+
+    /**
+     * Подсчёт в рабочих процессах: их отсортированные результаты сливаются прямо в выходной файл.
+     * Для {@code --top} слитый поток проходит через кучу из K слов, а для {@code --sort freq} -
+     * через внешнюю сортировку, так что словарь целиком в кучу координатора не собирается.
+     *
+     * @return {@code true}, если выходной файл записан
+     */
+    private static boolean coordinate(Options options) {
+        final String inputFile = String.join(" ", options.inputFiles);
+        final RunStatistics statistics = new RunStatistics();
+        final WorkerProcesses workers;
+        try {
+            final List<Path> files = InputFiles.resolve(options.inputFiles);
+            logger.info("Обработка {} файлов в {} рабочих процессах", files.size(), options.workers);
+            final RunStatistics.Timer timer = statistics.start("Рабочие процессы");
+            workers = WorkerProcesses.run(files, options);
+            long bytes = 0;
+            for (Path file : files) {
+                bytes += Files.size(file);
+            }
+            timer.end(bytes, workers.getTotalCount(), 0);
+        } catch (IOException e) {
+            logger.error("Не удалось обработать входной файл `{}`", inputFile, e);
+            System.out.println("Не удалось обработать входной файл");
+            return false;
+        }
+
+        final RunStatistics.Timer csvTimer;
+        try (workers; BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(options.outputFile)))) {
+            logger.info("Слияние результатов в файл `{}`", options.outputFile);
+            bufferedWriter.write("Слово, Частота, Частота (в %)");
+            bufferedWriter.newLine();
+
+            final long totalCount = workers.getTotalCount();
+            final FrequencyTable.EntryConsumer<IOException> writer = (word, length, frequency) -> {
+                bufferedWriter.write(word, 0, length);
+                bufferedWriter.write(", ");
+                bufferedWriter.write(String.valueOf(frequency));
+                bufferedWriter.write(", ");
+                bufferedWriter.write(String.valueOf(frequency * 100 / totalCount));
+                bufferedWriter.newLine();
+            };
+            if (options.top == 0 && options.sort != Options.Sort.FREQUENCY) {
+                csvTimer = statistics.start("Слияние результатов и запись CSV");
+                workers.merge(writer);
+            } else {
+                csvTimer = statistics.start("Слияние результатов, ранжирование и запись CSV");
+                final WordRanking.Source<IOException> merged = workers::merge;
+                WordRanking.forEach(merged, options.top, options.sort, options.memoryLimit, true, writer);
+            }
+        } catch (IOException e) {
+            logger.error("Не удалось записать выходной файл `{}`", options.outputFile, e);
+            System.out.println("Не удалось записать выходной файл");
+            return false;
+        }
+        csvTimer.end(new File(options.outputFile).length(), 0, 0);
+        statistics.logSummary();
+        return true;
+    }
+
+    /**
+     * Режим скользящего окна: вход читается до конца, отчёты дописываются в выходной файл по мере работы.
+     */
+    private static void tail(Options options) {
+        final String inputFile = options.inputFiles.getFirst();
+        try (InputStream inputStream = inputFile.equals("-") ? System.in : new FileInputStream(inputFile);
+             BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(options.outputFile)))) {
+            logger.info("Обработка `{}` в скользящем окне, отчёты в `{}`", inputFile, options.outputFile);
+            SlidingWindow.tail(inputStream, options, bufferedWriter);
+        } catch (IOException e) {
+            logger.error("Ошибка обработки `{}` в скользящем окне", inputFile, e);
+            System.out.println("Не удалось обработать входной файл или записать выходной файл");
+        }
+    }
+
+    /**
+     * Рабочий процесс режима {@code --workers}; завершается с ненулевым кодом, если подсчёт не удался.
+     */
+    private static void work(Path task, Path partial) {
+        try {
+            WorkerProcesses.work(task, partial);
+        } catch (IOException e) {
+            logger.error("Рабочий процесс не смог обработать задание `{}`", task, e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Подкоманда {@code query ИНДЕКС СЛОВО...}: выводит частоты слов из индекса,
+     * а для {@code СЛОВО*} - частоты всех слов с этим префиксом.
+     */
+    private static void query(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Запуск: java -jar lab1 query ИНДЕКС СЛОВО...");
+            System.out.println("  ИНДЕКС - файл, записанный с опцией --index");
+            System.out.println("  СЛОВО* - вывести все слова, начинающиеся с СЛОВО");
+            return;
+        }
+
+        final FrequencyIndex index;
+        try {
+            index = FrequencyIndex.open(Path.of(args[0]));
+        } catch (IOException e) {
+            logger.error("Не удалось открыть индекс `{}`", args[0], e);
+            System.out.println("Не удалось открыть индекс");
+            return;
+        }
+
+        final long totalCount = Math.max(1, index.getTotalCount());
+        for (int i = 1; i < args.length; i++) {
+            final String word = toLowerCase(args[i]);
+            if (word.endsWith("*")) {
+                final String prefix = word.substring(0, word.length() - 1);
+                index.forEachWithPrefix(prefix, (chars, length, frequency) ->
+                        printEntry(new String(chars, 0, length), frequency, totalCount));
+            } else {
+                printEntry(word, index.get(word), totalCount);
+            }
+        }
+    }
+
+    private static void printEntry(String word, long frequency, long totalCount) {
+        System.out.println(word + ", " + frequency + ", " + frequency * 100 / totalCount);
+    }
+
+    /**
+     * Переводит слово в нижний регистр так же, как это делается при разборе текста.
+     */
+    private static String toLowerCase(String word) {
+        final char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static FrequencyAnalyzer analyze(Options options) throws IOException {
+        if (options.ngram > 0) {
+            logger.info("Подсчёт {}-грамм", options.ngram);
+        } else if (options.approximate > 0) {
+            logger.info("Приближённый подсчёт, выводится {} самых частых слов", options.approximate);
+        } else {
+            if (options.offHeap) {
+                logger.info("Словарь хранится вне кучи");
+            }
+            if (options.memoryLimit > 0) {
+                logger.info("Предел памяти под словарь: {} байт", options.memoryLimit);
+            }
+        }
+        if (options.inputFiles.equals(List.of("-"))) {
+            logger.info("Обработка стандартного ввода в {} потоков", Math.max(1, options.threads));
+            return new FrequencyAnalyzer(System.in, options);
+        }
+        final List<Path> files = InputFiles.resolve(options.inputFiles);
+        if (options.snapshot != null) {
+            logger.info("Инкрементальный подсчёт со снимком `{}`", options.snapshot);
+            return Snapshot.update(Path.of(options.snapshot), files, options);
+        }
+        if (files.size() > 1) {
+            if (options.threads == 0) {
+                options.threads = Runtime.getRuntime().availableProcessors();
+            }
+            logger.info("Обработка {} файлов в {} потоков, отображение в память: {}",
+                    files.size(), options.threads, options.mapped);
+            return new FrequencyAnalyzer(files, options);
+        }
+        if (CompressedInput.isCompressed(files.getFirst())) {
+            logger.info("Файл сжат, распаковка идёт в отдельном потоке");
+            return new FrequencyAnalyzer(files.getFirst(), options);
+        }
+        if (options.threads > 0 || options.mapped) {
+            logger.info("Обработка в {} потоков, отображение в память: {}", options.threads, options.mapped);
+            return new FrequencyAnalyzer(files.getFirst(), options);
+        }
+        try (FileInputStream fileInputStream = new FileInputStream(files.getFirst().toFile())) {
+            return new FrequencyAnalyzer(fileInputStream, options);
         }
     }
 }
@@ -0,0 +1,579 @@
+package ru.alspace;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Счётчик N-грамм - последовательностей из N соседних слов.
+ * <p>
+ * Каждое слово получает целочисленный номер, а каждый префикс из двух и более слов - номер пары
+ * (номер более короткого префикса, номер слова) в отдельной таблице своей длины. Ключ N-граммы -
+ * номер префикса из N-1 слов в старших 32 битах {@code long} и номер последнего слова в младших,
+ * счётчики хранятся в таблице "long → long" на открытой адресации. Поэтому количество различных
+ * слов и префиксов ограничено только размером массивов (2<sup>30</sup> ячеек), а не шириной ключа;
+ * при переполнении подсчёт прерывается {@link IllegalStateException} с понятным сообщением.
+ * Текст N-граммы (слова через пробел) восстанавливается только при выводе.
+ * <p>
+ * В отличие от остальных таблиц, {@link #add} означает "следующее слово текста":
+ * N-грамма учитывается, когда набралось N слов подряд.
+ */
+final class NgramCounter implements FrequencyTable {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Наибольший размер массивов таблиц на открытой адресации
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int n;
+    // Номера префиксов из 2..N-1 слов; для биграмм префикс - само слово
+    private final PairIds[] prefixes;
+
+    // Номера слов: таблица на открытой адресации и обратное отображение номер → слово (номера с 1)
+    private String[] wordKeys = new String[INITIAL_CAPACITY];
+    private int[] wordHashes = new int[INITIAL_CAPACITY];
+    private int[] wordIds = new int[INITIAL_CAPACITY];
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int wordsSize = 0;
+    private long wordsMemory = 0;
+
+    // Счётчики N-грамм; ключ 0 означает пустую ячейку, так как номера слов начинаются с 1
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private long total = 0;
+
+    // Первые и последние N-1 слов последовательности - для стыковки соседних участков текста
+    private final int[] head;
+    private int headSize = 0;
+    private final int[] tail;
+    private int tailSize = 0;
+
+    // Буферы для восстановления текста N-граммы
+    private final int[] decodedIds;
+    private char[] decoded = new char[64];
+
+    /**
+     * @param n длина N-граммы, от 2 до 4
+     */
+    NgramCounter(int n) {
+        this.n = n;
+        this.prefixes = new PairIds[n - 2];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = new PairIds();
+        }
+        this.head = new int[n - 1];
+        this.tail = new int[n - 1];
+        this.decodedIds = new int[n];
+    }
+
+    /**
+     * Учитывает следующее слово текста.
+     */
+    @Override
+    public void add(char[] chars, int length, int hash, long count) {
+        next(wordId(chars, length, hash), count);
+    }
+
+    /**
+     * Прерывает последовательность: N-граммы не будут составляться через эту границу (например, между файлами).
+     */
+    void breakSequence() {
+        tailSize = 0;
+    }
+
+    /**
+     * Добавляет счётчики другого счётчика, текст которого не связан с текстом этого.
+     */
+    @Override
+    public void addAll(FrequencyTable other) {
+        if (!(other instanceof NgramCounter counter) || counter.n != n) {
+            throw new UnsupportedOperationException("N-граммы можно объединять только с N-граммами той же длины");
+        }
+        final int[] remap = remap(counter);
+        final int[] ids = new int[n];
+        for (int i = 0; i < counter.keys.length; i++) {
+            if (counter.keys[i] != 0) {
+                counter.words(counter.keys[i], ids);
+                for (int j = 0; j < n; j++) {
+                    ids[j] = remap[ids[j]];
+                }
+                increment(key(ids), counter.counts[i]);
+            }
+        }
+        total += counter.total;
+    }
+
+    /**
+     * Добавляет счётчики другого счётчика, текст которого непосредственно продолжает текст этого:
+     * дополнительно учитываются N-граммы на стыке.
+     */
+    void append(NgramCounter next) {
+        addAll(next);
+        final int[] remap = remap(next);
+        // N-граммы, начинающиеся в конце этого текста и заканчивающиеся в начале следующего
+        for (int i = 0; i < next.headSize; i++) {
+            next(remap[next.head[i]], 1);
+        }
+        // Если в следующем тексте не меньше N-1 слов, окно на конце - его собственный хвост
+        if (next.headSize == n - 1) {
+            tailSize = 0;
+            for (int i = 0; i < next.tailSize; i++) {
+                push(remap[next.tail[i]]);
+            }
+        }
+    }
+
+    @Override
+    public long get(String ngram) {
+        final String[] parts = ngram.split(" ");
+        if (parts.length != n) {
+            return 0;
+        }
+        int prefix = 0;
+        for (int i = 0; i < n - 1; i++) {
+            final int id = findId(parts[i]);
+            prefix = i == 0 || id == 0 ? id : prefixes[i - 1].find(prefix, id);
+            if (prefix == 0) {
+                return 0;
+            }
+        }
+        final int last = findId(parts[n - 1]);
+        if (last == 0) {
+            return 0;
+        }
+        final long key = (long) prefix << 32 | last;
+        final int slot = find(key);
+        return keys[slot] == key ? counts[slot] : 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Возвращает общее количество учтённых N-грамм.
+     */
+    long total() {
+        return total;
+    }
+
+    @Override
+    public long memoryUsage() {
+        // Ключ и счётчик N-граммы; ссылка, хеш и номер в таблице слов и ссылка в обратном отображении
+        long memory = (long) keys.length * Long.BYTES * 2
+                + (long) wordKeys.length * Integer.BYTES * 3 + (long) words.length * Integer.BYTES + wordsMemory;
+        for (PairIds prefix : prefixes) {
+            memory += prefix.memoryUsage();
+        }
+        return memory;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Текст N-граммы собирается в переиспользуемый буфер.
+     */
+    @Override
+    public <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                final int length = decode(keys[i]);
+                consumer.accept(decoded, length, counts[i]);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Long> asMap() {
+        return new MapView();
+    }
+
+    private void next(int id, long count) {
+        if (tailSize == n - 1) {
+            int prefix = tail[0];
+            for (int i = 1; i < tailSize; i++) {
+                prefix = prefixes[i - 1].id(prefix, tail[i]);
+            }
+            increment((long) prefix << 32 | id, count);
+            total += count;
+        }
+        push(id);
+        if (headSize < n - 1) {
+            head[headSize++] = id;
+        }
+    }
+
+    /**
+     * Сдвигает окно последних N-1 слов.
+     */
+    private void push(int id) {
+        if (tailSize == n - 1) {
+            System.arraycopy(tail, 1, tail, 0, tailSize - 1);
+            tailSize--;
+        }
+        tail[tailSize++] = id;
+    }
+
+    private void increment(long key, long count) {
+        final int slot = find(key);
+        if (keys[slot] == key) {
+            counts[slot] += count;
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        if (++size * 2L > keys.length) {
+            growCounts();
+        }
+    }
+
+    private int find(long key) {
+        final int mask = keys.length - 1;
+        int slot = spread(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growCounts() {
+        final long[] oldKeys = keys;
+        final long[] oldCounts = counts;
+        final int capacity = grownCapacity(oldKeys.length, "различных " + n + "-грамм");
+        keys = new long[capacity];
+        counts = new long[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                final int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Возвращает номер слова {@code chars[0..length)}, назначая новый при первом появлении.
+     */
+    private int wordId(char[] chars, int length, int hash) {
+        final int mask = wordKeys.length - 1;
+        int slot = spreadWord(hash) & mask;
+        String key;
+        while ((key = wordKeys[slot]) != null) {
+            if (wordHashes[slot] == hash && equals(key, chars, length)) {
+                return wordIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return insertWord(slot, new String(chars, 0, length), hash);
+    }
+
+    private int wordId(String word) {
+        final int hash = word.hashCode();
+        final int mask = wordKeys.length - 1;
+        int slot = spreadWord(hash) & mask;
+        String key;
+        while ((key = wordKeys[slot]) != null) {
+            if (wordHashes[slot] == hash && key.equals(word)) {
+                return wordIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return insertWord(slot, word, hash);
+    }
+
+    /**
+     * Возвращает номер слова или 0, если слово не встречалось.
+     */
+    private int findId(String word) {
+        final int hash = word.hashCode();
+        final int mask = wordKeys.length - 1;
+        int slot = spreadWord(hash) & mask;
+        String key;
+        while ((key = wordKeys[slot]) != null) {
+            if (wordHashes[slot] == hash && key.equals(word)) {
+                return wordIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private int insertWord(int slot, String word, int hash) {
+        final int id = ++wordsSize;
+        if (id == words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[id] = word;
+        wordKeys[slot] = word;
+        wordHashes[slot] = hash;
+        wordIds[slot] = id;
+        wordsMemory += 40 + word.length() * 2L;
+        if (wordsSize * 2L > wordKeys.length) {
+            growWords();
+        }
+        return id;
+    }
+
+    private void growWords() {
+        final String[] oldKeys = wordKeys;
+        final int[] oldHashes = wordHashes;
+        final int[] oldIds = wordIds;
+        final int capacity = grownCapacity(oldKeys.length, "различных слов");
+        wordKeys = new String[capacity];
+        wordHashes = new int[capacity];
+        wordIds = new int[capacity];
+        final int mask = wordKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = spreadWord(oldHashes[i]) & mask;
+                while (wordKeys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                wordKeys[slot] = oldKeys[i];
+                wordHashes[slot] = oldHashes[i];
+                wordIds[slot] = oldIds[i];
+            }
+        }
+    }
+
+    /**
+     * Строит отображение номеров слов другого счётчика в номера этого.
+     */
+    private int[] remap(NgramCounter other) {
+        final int[] remap = new int[other.wordsSize + 1];
+        for (int id = 1; id <= other.wordsSize; id++) {
+            remap[id] = wordId(other.words[id]);
+        }
+        return remap;
+    }
+
+    /**
+     * Раскладывает ключ N-граммы на номера слов.
+     */
+    private void words(long key, int[] ids) {
+        ids[n - 1] = (int) key;
+        int prefix = (int) (key >>> 32);
+        for (int i = n - 2; i > 0; i--) {
+            ids[i] = prefixes[i - 1].second(prefix);
+            prefix = prefixes[i - 1].first(prefix);
+        }
+        ids[0] = prefix;
+    }
+
+    /**
+     * Составляет ключ N-граммы из номеров слов, назначая номера новым префиксам.
+     */
+    private long key(int[] ids) {
+        int prefix = ids[0];
+        for (int i = 1; i < n - 1; i++) {
+            prefix = prefixes[i - 1].id(prefix, ids[i]);
+        }
+        return (long) prefix << 32 | ids[n - 1];
+    }
+
+    /**
+     * Восстанавливает текст N-граммы (слова через пробел) в буфер {@link #decoded}.
+     *
+     * @return длина текста
+     */
+    private int decode(long key) {
+        words(key, decodedIds);
+        int length = n - 1;
+        for (int id : decodedIds) {
+            length += words[id].length();
+        }
+        if (length > decoded.length) {
+            decoded = new char[Math.max(length, decoded.length * 2)];
+        }
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                decoded[position++] = ' ';
+            }
+            final String word = words[decodedIds[i]];
+            word.getChars(0, word.length(), decoded, position);
+            position += word.length();
+        }
+        return length;
+    }
+
+    /**
+     * Удваивает размер массивов таблицы.
+     *
+     * @param what что хранится в таблице - для сообщения об ошибке
+     * @throws IllegalStateException если таблица уже максимального размера
+     */
+    private static int grownCapacity(int capacity, String what) {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Слишком много " + what + ": таблица заполнена");
+        }
+        return capacity * 2;
+    }
+
+    private static int spread(long key) {
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static int spreadWord(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String key, char[] chars, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class MapView extends AbstractMap<String, Long> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String ngram && NgramCounter.this.get(ngram) != 0;
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof String ngram)) {
+                return null;
+            }
+            final long count = NgramCounter.this.get(ngram);
+            return count != 0 ? count : null;
+        }
+
+        @Override
+        public Set<Entry<String, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Long>> iterator() {
+                    return new Iterator<>() {
+                        private int slot = nextSlot(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Long> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final String ngram = new String(decoded, 0, decode(keys[slot]));
+                            final Entry<String, Long> entry = new SimpleImmutableEntry<>(ngram, counts[slot]);
+                            slot = nextSlot(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+
+        private int nextSlot(int from) {
+            while (from < keys.length && keys[from] == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Номера пар (номер префикса, номер слова): таблица "long → int" на открытой адресации
+     * и обратное отображение номер → пара (номера с 1).
+     */
+    private final class PairIds {
+        // Ключ 0 означает пустую ячейку, так как номер слова в младших битах ключа не меньше 1
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int[] firsts = new int[INITIAL_CAPACITY];
+        private int[] seconds = new int[INITIAL_CAPACITY];
+        private int size = 0;
+
+        /**
+         * Возвращает номер пары, назначая новый при первом появлении.
+         */
+        int id(int first, int second) {
+            final long key = (long) first << 32 | second;
+            final int slot = slot(key);
+            if (keys[slot] == key) {
+                return ids[slot];
+            }
+            final int id = ++size;
+            if (id == firsts.length) {
+                firsts = Arrays.copyOf(firsts, firsts.length * 2);
+                seconds = Arrays.copyOf(seconds, seconds.length * 2);
+            }
+            firsts[id] = first;
+            seconds[id] = second;
+            keys[slot] = key;
+            ids[slot] = id;
+            if (size * 2L > keys.length) {
+                grow();
+            }
+            return id;
+        }
+
+        /**
+         * Возвращает номер пары или 0, если пара не встречалась.
+         */
+        int find(int first, int second) {
+            final long key = (long) first << 32 | second;
+            final int slot = slot(key);
+            return keys[slot] == key ? ids[slot] : 0;
+        }
+
+        int first(int id) {
+            return firsts[id];
+        }
+
+        int second(int id) {
+            return seconds[id];
+        }
+
+        long memoryUsage() {
+            return (long) keys.length * (Long.BYTES + Integer.BYTES) + (long) firsts.length * Integer.BYTES * 2;
+        }
+
+        private int slot(long key) {
+            final int mask = keys.length - 1;
+            int slot = spread(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final int[] oldIds = ids;
+            final int capacity = grownCapacity(oldKeys.length, "различных префиксов " + n + "-грамм");
+            keys = new long[capacity];
+            ids = new int[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    final int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+    }
+}
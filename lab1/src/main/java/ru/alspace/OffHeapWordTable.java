@@ -0,0 +1,399 @@
+package ru.alspace;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Таблица "слово → количество", которая хранит слова и счётчики вне кучи.
+ * <p>
+ * Записи вида (хеш, длина, счётчик, байты слова) последовательно дописываются в арену
+ * из прямых буферов, а индекс на открытой адресации
+ * хранит в прямых буферах адреса записей. Сборщик мусора видит несколько крупных буферов
+ * вместо миллионов строк и узлов, а обход таблицы - это последовательное чтение арены.
+ * <p>
+ * Буферы арены растут вдвое, от {@link #FIRST_CHUNK_SIZE} до {@link #CHUNK_SIZE} байт: при параллельном подсчёте
+ * таблиц много, и у большинства из них словарь небольшой. Буферы таблицы, слитой в другую,
+ * освобождаются только сборщиком мусора.
+ * <p>
+ * Объём памяти вне кучи ограничивается опцией JVM {@code -XX:MaxDirectMemorySize}.
+ */
+final class OffHeapWordTable implements FrequencyTable {
+    // Размер первого и наибольший размер буфера арены
+    private static final int FIRST_CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    // Первые байты каждого буфера арены не используются, чтобы адрес записи никогда не был равен 0
+    private static final int CHUNK_START = 8;
+    // Заголовок записи: хеш (int), длина слова в байтах (int), счётчик (long)
+    private static final int HEADER_SIZE = 16;
+    // Количество ячеек индекса в одном буфере (по 8 байт на ячейку)
+    private static final int SEGMENT_SLOTS = 1 << 27;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+
+    // Ячейка индекса: 16 старших бит хеша, номер буфера арены (16 бит) и смещение записи (32 бита); 0 - пусто
+    private ByteBuffer[] index;
+    private long capacity;
+    private long size = 0;
+    // Объём арены, занятый записями
+    private long arenaUsage = 0;
+
+    // Слово в кодировке записи (UTF-8 для символов BMP)
+    private byte[] encoded = new byte[256];
+    private int encodedLength;
+
+    OffHeapWordTable() {
+        index = allocateIndex(INITIAL_CAPACITY);
+        capacity = INITIAL_CAPACITY;
+    }
+
+    @Override
+    public void add(char[] chars, int length, int hash, long count) {
+        encode(chars, length);
+        final long mask = capacity - 1;
+        final long tag = tag(hash);
+        long slot = spread(hash) & mask;
+        long entry;
+        while ((entry = getSlot(index, slot)) != 0) {
+            if ((entry >>> 48) == tag) {
+                final ByteBuffer chunk = chunks.get(chunkOf(entry));
+                final int position = (int) entry;
+                if (matches(chunk, position, hash)) {
+                    chunk.putLong(position + 8, chunk.getLong(position + 8) + count);
+                    return;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        setSlot(index, slot, (tag << 48) | append(hash, count));
+        if (++size * 4 > capacity * 3) {
+            grow();
+        }
+    }
+
+    @Override
+    public long get(String word) {
+        final char[] chars = word.toCharArray();
+        final int hash = word.hashCode();
+        encode(chars, chars.length);
+        final long mask = capacity - 1;
+        final long tag = tag(hash);
+        long slot = spread(hash) & mask;
+        long entry;
+        while ((entry = getSlot(index, slot)) != 0) {
+            if ((entry >>> 48) == tag) {
+                final ByteBuffer chunk = chunks.get(chunkOf(entry));
+                final int position = (int) entry;
+                if (matches(chunk, position, hash)) {
+                    return chunk.getLong(position + 8);
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long memoryUsage() {
+        return capacity * Long.BYTES + arenaUsage;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Записи читаются прямо из арены в порядке добавления, индекс при этом не используется.
+     */
+    @Override
+    public <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E {
+        char[] buffer = new char[64];
+        for (ByteBuffer chunk : chunks) {
+            int position = CHUNK_START;
+            while (position < chunk.position()) {
+                final int byteLength = chunk.getInt(position + 4);
+                if (byteLength > buffer.length) {
+                    buffer = new char[Math.max(byteLength, buffer.length * 2)];
+                }
+                final int length = decode(chunk, position + HEADER_SIZE, byteLength, buffer);
+                consumer.accept(buffer, length, chunk.getLong(position + 8));
+                position += recordSize(byteLength);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Сортируются адреса записей в арене: слова сравниваются побайтно без знака, что для кодировки записи
+     * (каждый символ отдельно, как в UTF-8) совпадает с посимвольным сравнением строк.
+     */
+    @Override
+    public <E extends Exception> void forEachSorted(EntryConsumer<E> consumer) throws E {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Слишком много слов для сортировки в памяти: " + size);
+        }
+        final long[] entries = new long[(int) size];
+        int n = 0;
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            final ByteBuffer buffer = chunks.get(chunk);
+            for (int position = CHUNK_START; position < buffer.position();
+                 position += recordSize(buffer.getInt(position + 4))) {
+                entries[n++] = ((long) chunk << 32) | position;
+            }
+        }
+        IndexSort.sort(entries, n, this::compare);
+
+        char[] buffer = new char[64];
+        for (int i = 0; i < n; i++) {
+            final ByteBuffer chunk = chunks.get(chunkOf(entries[i]));
+            final int position = (int) entries[i];
+            final int byteLength = chunk.getInt(position + 4);
+            if (byteLength > buffer.length) {
+                buffer = new char[Math.max(byteLength, buffer.length * 2)];
+            }
+            final int length = decode(chunk, position + HEADER_SIZE, byteLength, buffer);
+            consumer.accept(buffer, length, chunk.getLong(position + 8));
+        }
+    }
+
+    /**
+     * Сравнивает слова двух записей арены побайтно без знака.
+     */
+    private int compare(long first, long second) {
+        final ByteBuffer firstChunk = chunks.get(chunkOf(first));
+        final ByteBuffer secondChunk = chunks.get(chunkOf(second));
+        final int firstStart = (int) first + HEADER_SIZE;
+        final int secondStart = (int) second + HEADER_SIZE;
+        final int firstLength = firstChunk.getInt((int) first + 4);
+        final int secondLength = secondChunk.getInt((int) second + 4);
+        final int common = Math.min(firstLength, secondLength);
+        for (int i = 0; i < common; i++) {
+            final int difference =
+                    Byte.compareUnsigned(firstChunk.get(firstStart + i), secondChunk.get(secondStart + i));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return Integer.compare(firstLength, secondLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Представление не копирует данные: строки создаются по ходу итерации по арене.
+     */
+    @Override
+    public Map<String, Long> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Дописывает новую запись в арену и возвращает её адрес.
+     */
+    private long append(int hash, long count) {
+        final int recordSize = recordSize(encodedLength);
+        if (current == null || current.remaining() < recordSize) {
+            if (chunks.size() == 1 << 16) {
+                throw new IllegalStateException("Арена слов переполнена");
+            }
+            final int chunkSize = current == null ? FIRST_CHUNK_SIZE : Math.min(CHUNK_SIZE, current.capacity() * 2);
+            current = ByteBuffer.allocateDirect(Math.max(chunkSize, CHUNK_START + recordSize));
+            current.position(CHUNK_START);
+            chunks.add(current);
+        }
+
+        final int position = current.position();
+        current.putInt(hash).putInt(encodedLength).putLong(count).put(encoded, 0, encodedLength);
+        current.position(position + recordSize);
+        arenaUsage += recordSize;
+        return ((long) (chunks.size() - 1) << 32) | position;
+    }
+
+    private boolean matches(ByteBuffer chunk, int position, int hash) {
+        if (chunk.getInt(position) != hash || chunk.getInt(position + 4) != encodedLength) {
+            return false;
+        }
+        final int start = position + HEADER_SIZE;
+        for (int i = 0; i < encodedLength; i++) {
+            if (chunk.get(start + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        final long newCapacity = capacity * 2;
+        final ByteBuffer[] newIndex = allocateIndex(newCapacity);
+        final long mask = newCapacity - 1;
+        for (long i = 0; i < capacity; i++) {
+            final long entry = getSlot(index, i);
+            if (entry != 0) {
+                final int hash = chunks.get(chunkOf(entry)).getInt((int) entry);
+                long slot = spread(hash) & mask;
+                while (getSlot(newIndex, slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                setSlot(newIndex, slot, entry);
+            }
+        }
+        index = newIndex;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Кодирует слово в {@link #encoded}: символы BMP кодируются так же, как в UTF-8.
+     */
+    private void encode(char[] chars, int length) {
+        if (encoded.length < length * 3) {
+            encoded = new byte[Math.max(length * 3, encoded.length * 2)];
+        }
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = chars[i];
+            if (c < 0x80) {
+                encoded[n++] = (byte) c;
+            } else if (c < 0x800) {
+                encoded[n++] = (byte) (0xC0 | (c >> 6));
+                encoded[n++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                encoded[n++] = (byte) (0xE0 | (c >> 12));
+                encoded[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                encoded[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        encodedLength = n;
+    }
+
+    /**
+     * Декодирует байты слова из арены в {@code buffer} и возвращает количество символов.
+     */
+    private static int decode(ByteBuffer chunk, int position, int byteLength, char[] buffer) {
+        final int end = position + byteLength;
+        int length = 0;
+        while (position < end) {
+            final int b0 = chunk.get(position) & 0xFF;
+            if (b0 < 0x80) {
+                buffer[length++] = (char) b0;
+                position++;
+            } else if (b0 < 0xE0) {
+                buffer[length++] = (char) (((b0 & 0x1F) << 6) | (chunk.get(position + 1) & 0x3F));
+                position += 2;
+            } else {
+                buffer[length++] = (char) (((b0 & 0x0F) << 12)
+                        | ((chunk.get(position + 1) & 0x3F) << 6) | (chunk.get(position + 2) & 0x3F));
+                position += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int recordSize(int byteLength) {
+        return (HEADER_SIZE + byteLength + 7) & ~7;
+    }
+
+    private static int chunkOf(long entry) {
+        return (int) ((entry >>> 32) & 0xFFFF);
+    }
+
+    private static long tag(int hash) {
+        return (hash >>> 16) & 0xFFFFL;
+    }
+
+    private static long spread(int hash) {
+        return (hash ^ (hash >>> 16)) & 0xFFFFFFFFL;
+    }
+
+    private static ByteBuffer[] allocateIndex(long capacity) {
+        final int segments = (int) ((capacity + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+        final ByteBuffer[] result = new ByteBuffer[segments];
+        for (int i = 0; i < segments; i++) {
+            result[i] = ByteBuffer.allocateDirect((int) Math.min(SEGMENT_SLOTS, capacity) * 8);
+        }
+        return result;
+    }
+
+    private static long getSlot(ByteBuffer[] index, long slot) {
+        return index[(int) (slot / SEGMENT_SLOTS)].getLong((int) (slot % SEGMENT_SLOTS) * 8);
+    }
+
+    private static void setSlot(ByteBuffer[] index, long slot, long entry) {
+        index[(int) (slot / SEGMENT_SLOTS)].putLong((int) (slot % SEGMENT_SLOTS) * 8, entry);
+    }
+
+    private final class MapView extends AbstractMap<String, Long> {
+        @Override
+        public int size() {
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String word && OffHeapWordTable.this.get(word) != 0;
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof String word)) {
+                return null;
+            }
+            final long count = OffHeapWordTable.this.get(word);
+            return count != 0 ? count : null;
+        }
+
+        @Override
+        public Set<Entry<String, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return MapView.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Long>> iterator() {
+                    return new Iterator<>() {
+                        private int chunk = 0;
+                        private int position = CHUNK_START;
+                        private char[] buffer = new char[64];
+
+                        @Override
+                        public boolean hasNext() {
+                            while (chunk < chunks.size() && position >= chunks.get(chunk).position()) {
+                                chunk++;
+                                position = CHUNK_START;
+                            }
+                            return chunk < chunks.size();
+                        }
+
+                        @Override
+                        public Entry<String, Long> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final ByteBuffer data = chunks.get(chunk);
+                            final int byteLength = data.getInt(position + 4);
+                            if (byteLength > buffer.length) {
+                                buffer = new char[byteLength];
+                            }
+                            final int length = decode(data, position + HEADER_SIZE, byteLength, buffer);
+                            final Entry<String, Long> entry =
+                                    new SimpleImmutableEntry<>(new String(buffer, 0, length), data.getLong(position + 8));
+                            position += recordSize(byteLength);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ru.alspace;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Параметры запуска, разобранные из аргументов командной строки.
+ */
+public final class Options {
+    /**
+     * Порядок слов в выходном файле.
+     */
+    public enum Sort {
+        // В порядке обхода словаря
+        NONE,
+        // По убыванию частоты
+        FREQUENCY,
+        // По алфавиту
+        ALPHABET
+    }
+
+    // Входные файлы, каталоги или шаблоны путей
+    public List<String> inputFiles = List.of();
+    public String outputFile;
+    // Количество потоков; 0 - последовательная обработка
+    public int threads = 0;
+    // Читать файл через отображение в память
+    public boolean mapped = false;
+    // Хранить словарь вне кучи
+    public boolean offHeap = false;
+    // Предел памяти под словарь в байтах, после которого он сбрасывается на диск; 0 - без предела
+    public long memoryLimit = 0;
+    // Приближённый подсчёт: сколько самых частых слов выводить; 0 - точный подсчёт
+    public int approximate = 0;
+    // Длина N-грамм (от 2 до 4); 0 - подсчёт отдельных слов
+    public int ngram = 0;
+    // Сколько самых частых слов выводить; 0 - все слова
+    public int top = 0;
+    public Sort sort = Sort.NONE;
+    // Файл снимка для инкрементального подсчёта; null - без снимка
+    public String snapshot = null;
+    // Файл двоичного индекса частот; null - индекс не записывается
+    public String index = null;
+    // Количество рабочих процессов; 0 - подсчёт в текущей JVM
+    public int workers = 0;
+    // Длина скользящего окна в минутах; 0 - подсчёт по всему входу
+    public int window = 0;
+    // Интервал между отчётами окна в секундах
+    public int interval = 10;
+    // Каталог кэша результатов; null - без кэша
+    public String cache = null;
+    // Стоп-слова, которые не учитываются при подсчёте
+    public List<String> stopWords = List.of();
+    // Отсекать окончания, чтобы формы одного слова считались вместе
+    public boolean stem = false;
+
+    /**
+     * Разбирает аргументы вида {@code [ОПЦИИ] ВХОД... ВЫХОДНОЙ_ФАЙЛ}.
+     *
+     * @param args аргументы командной строки
+     * @return разобранные параметры
+     * @throws IllegalArgumentException если аргументы некорректны
+     */
+    public static Options parse(String[] args) {
+        final Options options = new Options();
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            final String option = args[i++];
+            switch (option) {
+                case "--threads" -> options.threads = parsePositive(option, value(args, i++, option));
+                case "--mmap" -> options.mapped = true;
+                case "--off-heap" -> options.offHeap = true;
+                case "--memory-limit" ->
+                        options.memoryLimit = parsePositive(option, value(args, i++, option)) * 1024L * 1024L;
+                case "--approximate" -> options.approximate = parsePositive(option, value(args, i++, option));
+                case "--ngram" -> options.ngram = parseNgram(value(args, i++, option));
+                case "--top" -> options.top = parsePositive(option, value(args, i++, option));
+                case "--sort" -> options.sort = parseSort(value(args, i++, option));
+                case "--snapshot" -> options.snapshot = value(args, i++, option);
+                case "--index" -> options.index = value(args, i++, option);
+                case "--workers" -> options.workers = parsePositive(option, value(args, i++, option));
+                case "--window" -> options.window = parsePositive(option, value(args, i++, option));
+                case "--interval" -> options.interval = parsePositive(option, value(args, i++, option));
+                case "--cache" -> options.cache = value(args, i++, option);
+                case "--stop-words" -> options.stopWords = readStopWords(value(args, i++, option));
+                case "--stem" -> options.stem = true;
+                default -> throw new IllegalArgumentException("Неизвестная опция `" + option + "`");
+            }
+        }
+
+        if (options.ngram > 0 && options.approximate > 0) {
+            throw new IllegalArgumentException("Опции `--ngram` и `--approximate` несовместимы");
+        }
+        if (options.ngram > 0 && (options.memoryLimit > 0 || options.offHeap)) {
+            throw new IllegalArgumentException("Опция `--ngram` несовместима с `--memory-limit` и `--off-heap`");
+        }
+        if (options.approximate > 0 && (options.memoryLimit > 0 || options.offHeap)) {
+            throw new IllegalArgumentException("Опция `--approximate` несовместима с `--memory-limit` и `--off-heap`");
+        }
+        if (options.snapshot != null && (options.ngram > 0 || options.approximate > 0)) {
+            throw new IllegalArgumentException("Опция `--snapshot` поддерживается только для точного подсчёта слов");
+        }
+        if (options.index != null && options.approximate > 0) {
+            throw new IllegalArgumentException("Опции `--index` и `--approximate` несовместимы");
+        }
+        if (options.workers > 0
+                && (options.ngram > 0 || options.approximate > 0 || options.snapshot != null || options.index != null)) {
+            throw new IllegalArgumentException(
+                    "Опция `--workers` несовместима с `--ngram`, `--approximate`, `--snapshot` и `--index`");
+        }
+        if (options.window > 0 && (options.ngram > 0 || options.approximate > 0 || options.snapshot != null
+                || options.index != null || options.workers > 0)) {
+            throw new IllegalArgumentException(
+                    "Опция `--window` несовместима с `--ngram`, `--approximate`, `--snapshot`, `--index` и `--workers`");
+        }
+        if (options.snapshot != null && (!options.stopWords.isEmpty() || options.stem)) {
+            throw new IllegalArgumentException("Опция `--snapshot` несовместима с `--stop-words` и `--stem`");
+        }
+        if (options.cache != null && (options.window > 0 || options.snapshot != null)) {
+            throw new IllegalArgumentException("Опция `--cache` несовместима с `--window` и `--snapshot`");
+        }
+        if (args.length - i < 2) {
+            throw new IllegalArgumentException("Неверное количество аргументов");
+        }
+        options.inputFiles = List.of(Arrays.copyOfRange(args, i, args.length - 1));
+        if (options.snapshot != null && options.inputFiles.contains("-")) {
+            throw new IllegalArgumentException("Опция `--snapshot` не поддерживает чтение стандартного ввода");
+        }
+        if (options.window > 0 && options.inputFiles.size() != 1) {
+            throw new IllegalArgumentException("Опция `--window` обрабатывает ровно один вход");
+        }
+        if (options.cache != null && options.inputFiles.contains("-")) {
+            throw new IllegalArgumentException("Опция `--cache` не поддерживает чтение стандартного ввода");
+        }
+        if (options.workers > 0 && options.inputFiles.contains("-")) {
+            throw new IllegalArgumentException("Опция `--workers` не поддерживает чтение стандартного ввода");
+        }
+        options.outputFile = args[args.length - 1];
+        return options;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Для опции `" + option + "` не указано значение");
+        }
+        return args[index];
+    }
+
+    /**
+     * Читает стоп-слова из файла в кодировке UTF-8, по одному в строке; пустые строки пропускаются.
+     */
+    private static List<String> readStopWords(String file) {
+        try {
+            return Files.readAllLines(Path.of(file), StandardCharsets.UTF_8).stream()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty())
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Не удалось прочитать файл стоп-слов `" + file + "`");
+        }
+    }
+
+    private static int parseNgram(String value) {
+        final int n = parsePositive("--ngram", value);
+        if (n < 2 || n > 4) {
+            throw new IllegalArgumentException("Значение опции `--ngram` должно быть от 2 до 4: " + value);
+        }
+        return n;
+    }
+
+    private static Sort parseSort(String value) {
+        return switch (value) {
+            case "freq" -> Sort.FREQUENCY;
+            case "alpha" -> Sort.ALPHABET;
+            default -> throw new IllegalArgumentException("Значение опции `--sort` должно быть freq или alpha: " + value);
+        };
+    }
+
+    private static int parsePositive(String option, String value) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Значение опции `" + option + "` должно быть числом: " + value);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException("Значение опции `" + option + "` должно быть положительным: " + value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Кэш результатов на диске с ключом по содержимому входа.
+ * <p>
+ * Ключ - SHA-256 от параметров, влияющих на результат, и от содержимого входных файлов по порядку; пути
+ * и время изменения файлов в ключ не входят, поэтому копия того же корпуса в другом месте тоже находится в кэше.
+ * Файлы хешируются окнами, отображёнными в память, без копирования в кучу. Запись кэша - выходной CSV
+ * и, если задана опция {@code --index}, индекс; при совпадении ключа они копируются вместо подсчёта.
+ * <p>
+ * Параметры, от которых зависит только скорость ({@code --threads}, {@code --mmap} и т.п.), в ключ не входят.
+ * Без {@code --sort} порядок слов в CSV не определён, и из кэша может вернуться другой порядок тех же строк.
+ */
+final class ResultCache {
+    private static final Logger logger = LogManager.getLogger(ResultCache.class);
+
+    // Версия формата результата; меняется, если меняется разбор слов или формат CSV и индекса
+    private static final int FORMAT_VERSION = 1;
+    private static final int DIGEST_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final String key;
+    private final Options options;
+
+    private ResultCache(Path directory, String key, Options options) {
+        this.directory = directory;
+        this.key = key;
+        this.options = options;
+    }
+
+    /**
+     * Открывает кэш для параметров запуска.
+     *
+     * @return кэш или {@code null}, если кэш не задан или ключ не удалось посчитать
+     */
+    static ResultCache open(Options options) {
+        if (options.cache == null) {
+            return null;
+        }
+        try {
+            final List<Path> files = InputFiles.resolve(options.inputFiles);
+            final String key = key(files, options);
+            logger.info("Ключ кэша: {}", key);
+            return new ResultCache(Files.createDirectories(Path.of(options.cache)), key, options);
+        } catch (IOException e) {
+            logger.warn("Кэш `{}` не используется", options.cache, e);
+            return null;
+        }
+    }
+
+    /**
+     * Считает ключ кэша по параметрам и содержимому файлов.
+     */
+    static String key(List<Path> files, Options options) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 есть в любой JVM
+        }
+        final String parameters = "lab1/" + FORMAT_VERSION
+                + " ngram=" + options.ngram
+                + " approximate=" + options.approximate
+                + " top=" + options.top
+                + " sort=" + options.sort
+                + " index=" + (options.index != null)
+                + " stem=" + options.stem
+                + " stopWords=" + String.join("\n", options.stopWords)
+                + " files=" + files.size();
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+        final ByteBuffer size = ByteBuffer.allocate(Long.BYTES);
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // Размер перед содержимым, чтобы граница между файлами входила в ключ
+                final long length = channel.size();
+                digest.update(size.clear().putLong(length).flip());
+                for (long position = 0; position < length; position += DIGEST_WINDOW_SIZE) {
+                    final long window = Math.min(DIGEST_WINDOW_SIZE, length - position);
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, window));
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Копирует результат из кэша в выходные файлы, если он там есть.
+     *
+     * @return {@code true}, если результат взят из кэша
+     */
+    boolean restore() {
+        final Path csv = directory.resolve(key + ".csv");
+        final Path index = directory.resolve(key + ".idx");
+        if (!Files.exists(csv) || options.index != null && !Files.exists(index)) {
+            return false;
+        }
+        try {
+            Files.copy(csv, Path.of(options.outputFile), StandardCopyOption.REPLACE_EXISTING);
+            if (options.index != null) {
+                Files.copy(index, Path.of(options.index), StandardCopyOption.REPLACE_EXISTING);
+            }
+            logger.info("Результат взят из кэша `{}`", directory);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Не удалось скопировать результат из кэша `{}`", directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Сохраняет выходные файлы в кэш. Ошибка записи кэша не считается ошибкой запуска.
+     */
+    void store() {
+        try {
+            if (options.index != null) {
+                put(Path.of(options.index), key + ".idx");
+            }
+            // CSV записывается последним: по нему restore определяет, что запись кэша полная
+            put(Path.of(options.outputFile), key + ".csv");
+            logger.info("Результат сохранён в кэш `{}`", directory);
+        } catch (IOException e) {
+            logger.warn("Не удалось сохранить результат в кэш `{}`", directory, e);
+        }
+    }
+
+    private void put(Path source, String name) throws IOException {
+        final Path temporary = Files.createTempFile(directory, name, ".tmp");
+        try {
+            Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, directory.resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
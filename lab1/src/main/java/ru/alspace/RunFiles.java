@@ -0,0 +1,257 @@
+package ru.alspace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Временные файлы с отсортированными сериями слов - общая часть {@link SpillingFrequencyTable}
+ * и {@link ExternalSort}.
+ * <p>
+ * Запись серии: длина слова в байтах UTF-8, байты слова и счётчик. Файлы удаляются после слияния,
+ * а если JVM завершится раньше - при её завершении. Ошибки ввода-вывода серий выбрасываются
+ * как {@link UncheckedIOException}, чтобы их нельзя было спутать с исключениями потребителя записей.
+ */
+final class RunFiles {
+    // Сколько серий сливается за один проход; при большем количестве слияние идёт в несколько проходов
+    private static final int MAX_MERGE_WIDTH = 64;
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private RunFiles() {
+    }
+
+    /**
+     * Создаёт пустую серию.
+     */
+    static Writer create() {
+        try {
+            final Path run = Files.createTempFile("lab1-run-", ".bin");
+            run.toFile().deleteOnExit();
+            return new Writer(run);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать серию словаря", e);
+        }
+    }
+
+    /**
+     * Удаляет серии.
+     */
+    static void delete(List<Path> runs) {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignored) {
+                // файл удалится при завершении JVM
+            }
+        }
+    }
+
+    /**
+     * Открывает слияние серий, отсортированных в порядке {@code order}. Если серий больше, чем сливается
+     * за один проход, они заранее сливаются группами, и список {@code runs} заменяется результатом.
+     */
+    static Merge merge(List<Path> runs, Comparator<WordRanking.Entry> order) {
+        while (runs.size() > MAX_MERGE_WIDTH) {
+            final List<Path> group = new ArrayList<>(runs.subList(0, MAX_MERGE_WIDTH));
+            runs.subList(0, MAX_MERGE_WIDTH).clear();
+            try (Writer writer = create()) {
+                runs.add(writer.run());
+                try (Merge merge = new Merge(group, order)) {
+                    while (merge.hasNext()) {
+                        writer.write(merge.word(), merge.count());
+                        merge.next();
+                    }
+                }
+            }
+            delete(group);
+        }
+        return new Merge(runs, order);
+    }
+
+    /**
+     * Запись серии.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path run;
+        private final DataOutputStream output;
+
+        private Writer(Path run) throws IOException {
+            this.run = run;
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE));
+        }
+
+        Path run() {
+            return run;
+        }
+
+        void write(String word, long count) {
+            write(word.getBytes(StandardCharsets.UTF_8), count);
+        }
+
+        void write(char[] chars, int length, long count) {
+            write(new String(chars, 0, length), count);
+        }
+
+        private void write(byte[] bytes, long count) {
+            try {
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                output.writeLong(count);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать серию словаря", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать серию словаря", e);
+            }
+        }
+    }
+
+    /**
+     * Чтение одной серии: хранит текущую запись.
+     */
+    private static final class Reader implements AutoCloseable {
+        private final DataInputStream input;
+        private WordRanking.Entry entry;
+
+        Reader(Path run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+            advance();
+        }
+
+        /**
+         * Читает следующую запись; по концу файла {@link #entry} становится {@code null}.
+         */
+        void advance() throws IOException {
+            final int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                entry = null;
+                return;
+            }
+            final byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            entry = new WordRanking.Entry(new String(bytes, StandardCharsets.UTF_8), input.readLong());
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * k-путевое слияние серий: выдаёт записи в порядке серий, складывая счётчики одинаковых слов,
+     * которые оказались рядом (при алфавитном порядке - все вхождения слова).
+     */
+    static final class Merge implements AutoCloseable {
+        private final PriorityQueue<Reader> queue;
+        private final List<Reader> readers = new ArrayList<>();
+        private String word;
+        private long count;
+
+        private Merge(List<Path> runs, Comparator<WordRanking.Entry> order) {
+            queue = new PriorityQueue<>(Comparator.comparing((Reader reader) -> reader.entry, order));
+            try {
+                for (Path run : runs) {
+                    final Reader reader = new Reader(run);
+                    readers.add(reader);
+                    if (reader.entry != null) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Не удалось прочитать серию словаря", e);
+            }
+            next();
+        }
+
+        boolean hasNext() {
+            return word != null;
+        }
+
+        String word() {
+            return word;
+        }
+
+        long count() {
+            return count;
+        }
+
+        /**
+         * Переходит к следующему слову.
+         */
+        void next() {
+            final Reader first = queue.poll();
+            if (first == null) {
+                word = null;
+                return;
+            }
+            word = first.entry.word();
+            count = 0;
+            try {
+                Reader reader = first;
+                while (true) {
+                    count += reader.entry.count();
+                    reader.advance();
+                    if (reader.entry != null) {
+                        queue.add(reader);
+                    }
+                    final Reader head = queue.peek();
+                    if (head == null || !head.entry.word().equals(word)) {
+                        break;
+                    }
+                    reader = queue.poll();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать серию словаря", e);
+            }
+        }
+
+        /**
+         * Передаёт оставшиеся записи в {@code consumer}; слово собирается в переиспользуемый буфер.
+         */
+        <E extends Exception> void forEach(FrequencyTable.EntryConsumer<E> consumer) throws E {
+            char[] buffer = new char[64];
+            while (hasNext()) {
+                final String current = word;
+                final long currentCount = count;
+                next();
+                if (current.length() > buffer.length) {
+                    buffer = new char[Math.max(current.length(), buffer.length * 2)];
+                }
+                current.getChars(0, current.length(), buffer, 0);
+                consumer.accept(buffer, current.length(), currentCount);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Reader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // закрываем остальные
+                }
+            }
+        }
+    }
+}
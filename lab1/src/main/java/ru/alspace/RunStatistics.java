@@ -0,0 +1,188 @@
+package ru.alspace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Статистика запуска: длительность фаз, скорость в байтах и словах в секунду и рост словаря.
+ * <p>
+ * Каждая фаза записывается событием JDK Flight Recorder {@code ru.alspace.Phase}, а по ходу разбора
+ * анализаторы пишут события {@code ru.alspace.Progress} (см. {@link #progress}). События видны при запуске
+ * с {@code -XX:StartFlightRecording}; без записи они почти ничего не стоят. В конце запуска итоги по фазам
+ * выводятся в лог.
+ */
+final class RunStatistics {
+    private static final Logger logger = LogManager.getLogger(RunStatistics.class);
+
+    @Name("ru.alspace.Phase")
+    @Label("Фаза обработки")
+    @Category("lab1")
+    @Description("Время фазы и объём обработанных в ней данных")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Фаза")
+        String phase;
+
+        @Label("Время")
+        @Description("Для фаз внутри анализатора - сумма по всем потокам")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+
+        @Label("Байты")
+        @DataAmount
+        long bytes;
+
+        @Label("Слова")
+        long words;
+
+        @Label("Различные слова")
+        @Description("-1, если таблица сброшена на диск и её размер нельзя узнать без слияния")
+        long distinct;
+    }
+
+    @Name("ru.alspace.Progress")
+    @Label("Ход разбора")
+    @Category("lab1")
+    @Description("Накопленные счётчики анализатора; при параллельной обработке - счётчики одной задачи")
+    @StackTrace(false)
+    static final class ProgressEvent extends Event {
+        @Label("Байты")
+        @DataAmount
+        long bytes;
+
+        @Label("Слова")
+        long words;
+
+        @Label("Различные слова")
+        @Description("-1, если таблица сброшена на диск и её размер нельзя узнать без слияния")
+        long distinct;
+
+        @Label("Байт в секунду")
+        @DataAmount(DataAmount.BYTES)
+        long bytesPerSecond;
+
+        @Label("Слов в секунду")
+        long wordsPerSecond;
+    }
+
+    /**
+     * Итоги фазы.
+     */
+    private record Phase(String name, long nanos, long bytes, long words, long distinct) {
+    }
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Начинает фазу, которая длится до вызова {@link Timer#end}.
+     */
+    Timer start(String name) {
+        return new Timer(name);
+    }
+
+    /**
+     * Записывает фазы анализатора: чтение, декодирование, разбор слов с обновлением словаря и слияние словарей.
+     * Разбор и обновление словаря идут в одном проходе по символам, поэтому измеряются вместе.
+     */
+    void record(FrequencyAnalyzer analyzer) {
+        final long bytes = analyzer.getBytesCount();
+        record("Чтение", analyzer.getReadNanos(), bytes, 0, 0);
+        record("Декодирование UTF-8", analyzer.getDecodeNanos(), bytes, 0, 0);
+        record("Разбор слов и обновление словаря", analyzer.getParseNanos(), bytes, analyzer.getWordsCount(), 0);
+        record("Слияние словарей", analyzer.getMergeNanos(), 0, 0, 0);
+    }
+
+    private void record(String name, long nanos, long bytes, long words, long distinct) {
+        if (nanos == 0) {
+            return;
+        }
+        final PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = name;
+            event.time = nanos;
+            event.bytes = bytes;
+            event.words = words;
+            event.distinct = distinct;
+            event.commit();
+        }
+        phases.add(new Phase(name, nanos, bytes, words, distinct));
+    }
+
+    /**
+     * Выводит в лог итоги по всем фазам.
+     */
+    void logSummary() {
+        for (Phase phase : phases) {
+            final double seconds = Math.max(phase.nanos(), 1) / 1e9;
+            final StringBuilder line = new StringBuilder()
+                    .append(String.format("Фаза `%s`: %.1f мс", phase.name(), phase.nanos() / 1e6));
+            if (phase.bytes() > 0) {
+                line.append(String.format(", %d байт, %.1f МБ/с", phase.bytes(), phase.bytes() / seconds / 1e6));
+            }
+            if (phase.words() > 0) {
+                line.append(String.format(", %d слов, %.0f слов/с", phase.words(), phase.words() / seconds));
+            }
+            if (phase.distinct() > 0) {
+                line.append(String.format(", %d различных слов", phase.distinct()));
+            }
+            logger.info(line);
+        }
+    }
+
+    /**
+     * Записывает событие о ходе разбора, если запись событий включена.
+     *
+     * @param nanos время работы анализатора, за которое получены счётчики
+     */
+    static void progress(long bytes, long words, FrequencyTable table, long nanos) {
+        final ProgressEvent event = new ProgressEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        final double seconds = Math.max(nanos, 1) / 1e9;
+        event.bytes = bytes;
+        event.words = words;
+        event.distinct = distinct(table);
+        event.bytesPerSecond = (long) (bytes / seconds);
+        event.wordsPerSecond = (long) (words / seconds);
+        event.commit();
+    }
+
+    /**
+     * Количество различных слов таблицы для статистики или -1, если таблица сброшена на диск:
+     * её размер считается слиянием серий, что слишком дорого ради статистики.
+     */
+    static long distinct(FrequencyTable table) {
+        return table instanceof SpillingFrequencyTable ? -1 : table.size();
+    }
+
+    /**
+     * Фаза, которая измеряется по времени от {@link #start} до {@link #end}.
+     */
+    final class Timer {
+        private final String name;
+        private final long start = System.nanoTime();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Завершает фазу и записывает её итоги.
+         */
+        void end(long bytes, long words, long distinct) {
+            record(name, Math.max(1, System.nanoTime() - start), bytes, words, distinct);
+        }
+    }
+}
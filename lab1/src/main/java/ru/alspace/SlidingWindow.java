@@ -0,0 +1,202 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Частоты слов в скользящем окне по времени для непрерывных потоков вроде {@code tail -f}.
+ * <p>
+ * Поток делится на корзины по {@code options.interval} секунд: слова каждой корзины считаются в свою таблицу,
+ * а таблица окна хранит сумму по последним корзинам. Когда корзина выходит из окна, её счётчики вычитаются
+ * из таблицы окна, поэтому вытеснение стоит столько, сколько слов в этой корзине, без пересчёта окна.
+ * После каждой корзины в выходной файл дописываются {@code options.top} самых частых слов окна.
+ */
+final class SlidingWindow {
+    private static final Logger logger = LogManager.getLogger(SlidingWindow.class);
+
+    // Сколько самых частых слов выводить, если не задана опция --top
+    private static final int DEFAULT_TOP = 10;
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Корзина: таблица слов за один интервал и количество этих слов.
+     */
+    private record Bucket(FrequencyTable table, long words) {
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+    private final WordCountTable window = new WordCountTable();
+    private long windowWords = 0;
+
+    /**
+     * @param capacity сколько последних корзин входит в окно
+     */
+    SlidingWindow(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Добавляет корзину в окно и вытесняет самую старую, если корзин стало больше, чем помещается в окно.
+     */
+    void add(FrequencyTable table, long words) {
+        window.addAll(table);
+        windowWords += words;
+        buckets.addLast(new Bucket(table, words));
+        if (buckets.size() > capacity) {
+            final Bucket expired = buckets.removeFirst();
+            window.subtractAll(expired.table());
+            windowWords -= expired.words();
+        }
+    }
+
+    /**
+     * Передаёт {@code top} самых частых слов окна в {@code consumer} по убыванию частоты.
+     */
+    <E extends Exception> void forEachTop(int top, FrequencyTable.EntryConsumer<E> consumer) throws E {
+        WordRanking.forEach(window, top, Options.Sort.FREQUENCY, false, consumer);
+    }
+
+    /**
+     * Количество различных слов в окне.
+     */
+    long size() {
+        return window.size();
+    }
+
+    /**
+     * Количество слов в окне.
+     */
+    long getWordsCount() {
+        return windowWords;
+    }
+
+    /**
+     * Читает поток до конца, закрывая корзину раз в {@code options.interval} секунд, даже если данных не было,
+     * и дописывает в {@code output} самые частые слова окна после каждой корзины.
+     *
+     * @param inputStream поток в кодировке UTF-8
+     * @param options     параметры: длина окна, интервал корзины и количество выводимых слов
+     * @param output      куда дописываются отчёты
+     * @throws IOException если не удалось прочитать поток или записать отчёт
+     */
+    static void tail(InputStream inputStream, Options options, Writer output) throws IOException {
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(options.interval);
+        final int capacity = (int) Math.max(1, (options.window * 60L + options.interval - 1) / options.interval);
+        final int top = options.top > 0 ? options.top : DEFAULT_TOP;
+        logger.info("Окно {} мин. из {} корзин по {} с", options.window, capacity, options.interval);
+
+        final SlidingWindow window = new SlidingWindow(capacity);
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(options);
+        final ChunkReader reader = new ChunkReader(inputStream);
+        output.write("Время, Слово, Частота, Частота (в %)");
+        output.write(System.lineSeparator());
+
+        long wordsBefore = 0;
+        long deadline = System.nanoTime() + intervalNanos;
+        boolean finished = false;
+        while (!finished) {
+            final char[] chunk = reader.poll(deadline - System.nanoTime());
+            if (chunk == ChunkReader.END) {
+                analyzer.endWord();
+                finished = true;
+            } else if (chunk != null) {
+                analyzer.parse(chunk, 0, chunk.length);
+            }
+            if (finished || System.nanoTime() - deadline >= 0) {
+                window.add(analyzer.takeTable(), analyzer.getWordsCount() - wordsBefore);
+                wordsBefore = analyzer.getWordsCount();
+                window.report(top, output);
+                deadline += intervalNanos;
+            }
+        }
+    }
+
+    private void report(int top, Writer output) throws IOException {
+        final String time = LocalDateTime.now().format(TIME_FORMAT);
+        final long totalCount = Math.max(1, windowWords);
+        forEachTop(top, (word, length, frequency) -> {
+            output.write(time);
+            output.write(", ");
+            output.write(word, 0, length);
+            output.write(", ");
+            output.write(String.valueOf(frequency));
+            output.write(", ");
+            output.write(String.valueOf(frequency * 100 / totalCount));
+            output.write(System.lineSeparator());
+        });
+        output.flush();
+        logger.info("Отчёт окна: {} слов, {} различных", windowWords, window.size());
+    }
+
+    /**
+     * Читает поток в отдельном потоке, чтобы корзины закрывались по времени, пока поток ждёт новых данных.
+     */
+    private static final class ChunkReader {
+        // Метка конца потока
+        static final char[] END = new char[0];
+
+        private final BlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private volatile IOException failure;
+
+        ChunkReader(InputStream inputStream) {
+            final Thread thread = new Thread(() -> read(inputStream), "lab1-window-reader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void read(InputStream inputStream) {
+            final Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            final char[] buffer = new char[CHAR_BUFFER_SIZE];
+            try {
+                try {
+                    int read;
+                    while ((read = reader.read(buffer)) >= 0) {
+                        chunks.put(Arrays.copyOf(buffer, read));
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                chunks.put(END);
+            } catch (InterruptedException ignored) {
+                // программа завершается
+            }
+        }
+
+        /**
+         * Ждёт следующий блок символов не дольше {@code timeoutNanos}.
+         *
+         * @return блок, {@link #END} в конце потока или {@code null}, если время вышло
+         */
+        char[] poll(long timeoutNanos) throws IOException {
+            final char[] chunk;
+            try {
+                chunk = chunks.poll(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Чтение потока прервано");
+            }
+            if (chunk == END && failure != null) {
+                throw failure;
+            }
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Инкрементальный подсчёт со снимком состояния.
+ * <p>
+ * Снимок - двоичный файл со словарём в формате {@link SortedEntries}, общим количеством слов
+ * и для каждого входного файла - смещением, до которого он уже учтён, и контрольной суммой учтённой части.
+ * При следующем запуске разбираются только новые файлы и дописанные в конец байты. Если учтённая часть файла изменилась
+ * или файл пропал, снимок отбрасывается и корпус пересчитывается целиком.
+ * <p>
+ * Контрольная сумма CRC32C покрывает всю учтённую часть, поэтому замечается и правка в середине файла.
+ * Сумма старой части, посчитанная при проверке, продолжается по дописанным байтам, так что каждый
+ * учтённый байт за запуск читается для неё один раз.
+ * <p>
+ * Смещение файла - позиция после последнего разделителя: незаконченное слово в конце файла
+ * в снимок не попадает, а досчитывается после его записи, так как оно может продолжиться
+ * в дописанных байтах.
+ */
+final class Snapshot {
+    private static final Logger logger = LogManager.getLogger(Snapshot.class);
+
+    private static final int MAGIC = 0x4C31534E; // "L1SN"
+    private static final int VERSION = 3;
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Состояние файла в снимке: учтённая часть [0, offset) и её контрольная сумма.
+     */
+    private record FileState(long offset, long checksum) {
+    }
+
+    private final Map<String, FileState> files;
+    private final FrequencyTable table;
+    private final long wordsCount;
+
+    private Snapshot(Map<String, FileState> files, FrequencyTable table, long wordsCount) {
+        this.files = files;
+        this.table = table;
+        this.wordsCount = wordsCount;
+    }
+
+    /**
+     * Обновляет снимок по текущему состоянию файлов и возвращает полную статистику по ним.
+     *
+     * @param snapshotFile файл снимка; если его нет, он будет создан
+     * @param inputs       входные файлы
+     * @param options      параметры обработки
+     * @throws IOException если не удалось прочитать входные файлы или прочитать и записать снимок
+     */
+    static FrequencyAnalyzer update(Path snapshotFile, List<Path> inputs, Options options) throws IOException {
+        Snapshot previous = Files.exists(snapshotFile) ? read(snapshotFile, options) : null;
+        final Map<String, CRC32C> checksums = previous != null ? previous.verify(inputs) : null;
+        if (checksums == null) {
+            previous = null;
+        }
+
+        final List<FrequencyAnalyzer.FileRange> ranges = new ArrayList<>();
+        final List<FrequencyAnalyzer.FileRange> tails = new ArrayList<>();
+        final Map<String, FileState> states = new LinkedHashMap<>();
+        for (Path input : inputs) {
+            final String key = key(input);
+            final FileState state = previous != null ? previous.files.get(key) : null;
+            final long start = state != null ? state.offset() : 0;
+            final CRC32C crc = state != null ? checksums.get(key) : new CRC32C();
+            final long size = Files.size(input);
+
+            final long boundary;
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                // Сжатый файл нельзя дочитать с середины, поэтому он учитывается только целиком
+                boundary = CompressedInput.isCompressed(input)
+                        ? size
+                        : FrequencyAnalyzer.lastWordBoundary(channel, start, size);
+                update(crc, channel, start, boundary);
+            }
+            if (boundary < size) {
+                tails.add(new FrequencyAnalyzer.FileRange(input, boundary, size));
+            }
+            if (boundary > start) {
+                ranges.add(new FrequencyAnalyzer.FileRange(input, start, boundary));
+            }
+            states.put(key, new FileState(boundary, crc.getValue()));
+        }
+
+        logger.info("Новых данных для разбора: {} байт в {} файлах",
+                ranges.stream().mapToLong(FrequencyAnalyzer.FileRange::size).sum(), ranges.size());
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(options, ranges);
+        if (previous != null) {
+            analyzer.addAll(previous.table, previous.wordsCount);
+        }
+        write(snapshotFile, states, analyzer);
+
+        if (!tails.isEmpty()) {
+            final FrequencyAnalyzer tail = new FrequencyAnalyzer(options, tails);
+            analyzer.addAll(tail.getTable(), tail.getWordsCount());
+        }
+        return analyzer;
+    }
+
+    /**
+     * Проверяет, что все учтённые в снимке файлы есть среди входных и их учтённые части не изменились.
+     *
+     * @return контрольные суммы учтённых частей по ключам файлов, которые можно продолжить по дописанным байтам,
+     * или {@code null}, если снимок нужно отбросить
+     */
+    private Map<String, CRC32C> verify(List<Path> inputs) throws IOException {
+        final Map<String, Path> current = new HashMap<>();
+        for (Path input : inputs) {
+            current.put(key(input), input);
+        }
+        final Map<String, CRC32C> checksums = new HashMap<>();
+        for (Map.Entry<String, FileState> entry : files.entrySet()) {
+            final Path input = current.get(entry.getKey());
+            final FileState state = entry.getValue();
+            if (input == null) {
+                logger.warn("Файл `{}` из снимка больше не входит в корпус, снимок пересчитывается", entry.getKey());
+                return null;
+            }
+            final long size = Files.size(input);
+            final boolean grownCompressed = size != state.offset() && CompressedInput.isCompressed(input);
+            final CRC32C crc = new CRC32C();
+            if (size >= state.offset() && !grownCompressed) {
+                try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                    update(crc, channel, 0, state.offset());
+                }
+            }
+            if (size < state.offset() || grownCompressed || crc.getValue() != state.checksum()) {
+                logger.warn("Файл `{}` изменился, снимок пересчитывается", entry.getKey());
+                return null;
+            }
+            checksums.put(entry.getKey(), crc);
+        }
+        return checksums;
+    }
+
+    private static String key(Path input) {
+        return input.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Добавляет к контрольной сумме байты файла [start, end), читая их блоками по {@link #IO_BUFFER_SIZE} байт.
+     */
+    private static void update(CRC32C crc, FileChannel channel, long start, long end) throws IOException {
+        if (end <= start) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(IO_BUFFER_SIZE, end - start));
+        long position = start;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break; // файл оказался короче, чем ожидалось
+            }
+            crc.update(buffer.flip());
+            position += read;
+        }
+    }
+
+    private static Snapshot read(Path snapshotFile, Options options) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile), IO_BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                logger.warn("Файл `{}` не является снимком этой версии, корпус пересчитывается", snapshotFile);
+                return null;
+            }
+            final long wordsCount = input.readLong();
+            final int filesCount = input.readInt();
+            final Map<String, FileState> files = new LinkedHashMap<>();
+            for (int i = 0; i < filesCount; i++) {
+                files.put(input.readUTF(), new FileState(input.readLong(), input.readLong()));
+            }
+
+            final FrequencyTable table = FrequencyAnalyzer.createTable(options);
+            final SortedEntries.Reader entries = new SortedEntries.Reader(input);
+            long entriesCount = 0;
+            while (entries.next()) {
+                entriesCount++;
+                final char[] word = entries.word().toCharArray();
+                table.add(word, word.length, FrequencyTable.hash(word, word.length), entries.count());
+            }
+            logger.info("Загружен снимок `{}`: {} слов, {} файлов", snapshotFile, entriesCount, filesCount);
+            return new Snapshot(files, table, wordsCount);
+        }
+    }
+
+    /**
+     * Записывает снимок во временный файл рядом и затем заменяет им старый, чтобы прерванная запись не портила снимок.
+     */
+    private static void write(Path snapshotFile, Map<String, FileState> states, FrequencyAnalyzer analyzer)
+            throws IOException {
+        final Path absolute = snapshotFile.toAbsolutePath();
+        final Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), IO_BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(analyzer.getWordsCount());
+                output.writeInt(states.size());
+                for (Map.Entry<String, FileState> entry : states.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().offset());
+                    output.writeLong(entry.getValue().checksum());
+                }
+
+                SortedEntries.write(output, analyzer.getTable());
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Записан снимок `{}`", snapshotFile);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
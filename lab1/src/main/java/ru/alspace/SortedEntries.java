@@ -0,0 +1,115 @@
+package ru.alspace;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Двоичная запись словаря, отсортированного по словам.
+ * <p>
+ * Для каждого слова записывается длина общего префикса с предыдущим словом, увеличенная на единицу,
+ * длина и байты остатка в UTF-8 и счётчик; числа записываются переменной длиной по 7 бит в байте.
+ * Словарь заканчивается нулём вместо длины префикса, поэтому количество слов заранее не нужно
+ * и таблица с ограниченной памятью записывается одним проходом слияния.
+ * Слова состоят из символов BMP, поэтому сравнение байтов UTF-8 без знака даёт тот же порядок, что и сравнение строк.
+ */
+final class SortedEntries {
+    private SortedEntries() {
+    }
+
+    /**
+     * Записывает словарь таблицы в алфавитном порядке.
+     */
+    static void write(DataOutputStream output, FrequencyTable table) throws IOException {
+        final byte[][] previous = {new byte[0]};
+        WordRanking.forEach(table, 0, Options.Sort.ALPHABET, true, (chars, length, count) -> {
+            final byte[] bytes = new String(chars, 0, length).getBytes(StandardCharsets.UTF_8);
+            final int mismatch = Arrays.mismatch(previous[0], bytes);
+            final int prefix = mismatch < 0 ? bytes.length : mismatch;
+            writeVarLong(output, prefix + 1);
+            writeVarLong(output, bytes.length - prefix);
+            output.write(bytes, prefix, bytes.length - prefix);
+            writeVarLong(output, count);
+            previous[0] = bytes;
+        });
+        writeVarLong(output, 0);
+    }
+
+    /**
+     * Последовательное чтение словаря, записанного {@link #write}.
+     */
+    static final class Reader {
+        private final DataInputStream input;
+        private byte[] bytes = new byte[64];
+        private int length = 0;
+        private long count = 0;
+
+        Reader(DataInputStream input) throws IOException {
+            this.input = input;
+        }
+
+        /**
+         * Читает следующее слово.
+         *
+         * @return {@code false}, если слова закончились
+         */
+        boolean next() throws IOException {
+            final long marker = readVarLong(input);
+            if (marker == 0) {
+                return false;
+            }
+            final int prefix = (int) marker - 1;
+            final int suffix = (int) readVarLong(input);
+            length = prefix + suffix;
+            if (length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+            }
+            input.readFully(bytes, prefix, suffix);
+            count = readVarLong(input);
+            return true;
+        }
+
+        long count() {
+            return count;
+        }
+
+        /**
+         * Сравнивает текущие слова двух читателей побайтно без знака.
+         */
+        int compareTo(Reader other) {
+            return Arrays.compareUnsigned(bytes, 0, length, other.bytes, 0, other.length);
+        }
+
+        boolean sameWord(Reader other) {
+            return Arrays.equals(bytes, 0, length, other.bytes, 0, other.length);
+        }
+
+        /**
+         * Текущее слово.
+         */
+        String word() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package ru.alspace;
+
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Таблица "слово → количество" с ограниченным объёмом памяти.
+ * <p>
+ * Счёт ведётся во вложенной таблице в памяти. Когда её объём превышает заданный предел,
+ * содержимое сортируется по словам и сбрасывается на диск в отдельный файл (серию, см. {@link RunFiles}),
+ * а вложенная таблица начинается заново. При обходе серии сливаются k-путевым слиянием,
+ * поэтому слова выдаются по алфавиту, а пиковый объём памяти определяется пределом,
+ * а не размером словаря.
+ * <p>
+ * Файлы серий удаляются при завершении JVM.
+ */
+final class SpillingFrequencyTable implements FrequencyTable {
+    private final Supplier<FrequencyTable> tableFactory;
+    private final long memoryLimit;
+    private final List<Path> runs = new ArrayList<>();
+    private FrequencyTable memory;
+
+    /**
+     * @param tableFactory создаёт вложенную таблицу в памяти
+     * @param memoryLimit  предел объёма вложенной таблицы в байтах
+     */
+    SpillingFrequencyTable(Supplier<FrequencyTable> tableFactory, long memoryLimit) {
+        this.tableFactory = tableFactory;
+        this.memoryLimit = memoryLimit;
+        this.memory = tableFactory.get();
+    }
+
+    @Override
+    public void add(char[] chars, int length, int hash, long count) {
+        memory.add(chars, length, hash, count);
+        if (memory.memoryUsage() > memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Серии другой таблицы забираются без перезаписи.
+     */
+    @Override
+    public void addAll(FrequencyTable other) {
+        if (!(other instanceof SpillingFrequencyTable table)) {
+            FrequencyTable.super.addAll(other);
+            return;
+        }
+        runs.addAll(table.runs);
+        table.runs.clear();
+        FrequencyTable.super.addAll(table.memory);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Требует полного слияния серий.
+     */
+    @Override
+    public long get(String word) {
+        if (runs.isEmpty()) {
+            return memory.get(word);
+        }
+        try (RunFiles.Merge iterator = merge()) {
+            while (iterator.hasNext()) {
+                final int compare = iterator.word().compareTo(word);
+                if (compare == 0) {
+                    return iterator.count();
+                } else if (compare > 0) {
+                    break;
+                }
+                iterator.next();
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Требует полного слияния серий.
+     */
+    @Override
+    public long size() {
+        if (runs.isEmpty()) {
+            return memory.size();
+        }
+        long size = 0;
+        try (RunFiles.Merge iterator = merge()) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Предел объёма вложенной таблицы в байтах.
+     */
+    long memoryLimit() {
+        return memoryLimit;
+    }
+
+    @Override
+    public long memoryUsage() {
+        return memory.memoryUsage();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Если на диск уже что-то сбрасывалось, слова выдаются в алфавитном порядке.
+     */
+    @Override
+    public <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E {
+        if (runs.isEmpty()) {
+            memory.forEach(consumer);
+            return;
+        }
+        forEachSorted(consumer);
+    }
+
+    /**
+     * Передаёт слова в {@code consumer} в алфавитном порядке ({@link String#compareTo}).
+     * Остаток таблицы в памяти сбрасывается на диск, поэтому словарь целиком в кучу не копируется.
+     */
+    @Override
+    public <E extends Exception> void forEachSorted(EntryConsumer<E> consumer) throws E {
+        try (RunFiles.Merge merge = merge()) {
+            merge.forEach(consumer);
+        }
+    }
+
+    @Override
+    public Map<String, Long> asMap() {
+        if (runs.isEmpty()) {
+            return memory.asMap();
+        }
+        return new MapView();
+    }
+
+    /**
+     * Записывает содержимое таблицы в памяти в новую серию и очищает таблицу. Таблица выдаёт слова
+     * по алфавиту из своего хранилища, поэтому словарь не копируется в кучу.
+     */
+    private void spill() {
+        try (RunFiles.Writer writer = RunFiles.create()) {
+            runs.add(writer.run());
+            memory.forEachSorted(writer::write);
+        }
+        memory = tableFactory.get();
+    }
+
+    /**
+     * Сбрасывает остаток таблицы на диск и открывает слияние всех серий по алфавиту.
+     */
+    private RunFiles.Merge merge() {
+        if (memory.size() > 0) {
+            spill();
+        }
+        return RunFiles.merge(runs, WordRanking.BY_ALPHABET);
+    }
+
+    private final class MapView extends AbstractMap<String, Long> {
+        @Override
+        public int size() {
+            return (int) Math.min(SpillingFrequencyTable.this.size(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof String word)) {
+                return null;
+            }
+            final long count = SpillingFrequencyTable.this.get(word);
+            return count != 0 ? count : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        /**
+         * Итерация ведёт слияние серий; открытые файлы закрываются, когда итератор дойдёт до конца.
+         */
+        @Override
+        public Set<Entry<String, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return MapView.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Long>> iterator() {
+                    final RunFiles.Merge merge = SpillingFrequencyTable.this.merge();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            if (!merge.hasNext()) {
+                                merge.close();
+                                return false;
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public Entry<String, Long> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<String, Long> entry = new SimpleImmutableEntry<>(merge.word(), merge.count());
+                            merge.next();
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package ru.alspace;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Таблица "слово → количество" в куче на открытой адресации с примитивными счётчиками.
+ * <p>
+ * Слово ищется прямо по символам из буфера и хешу, посчитанному во время разбора,
+ * поэтому для уже встречавшихся слов строка не создаётся, а счётчик увеличивается
+ * за один проход по цепочке проб без упаковки в {@link Long}.
+ * Новая строка выделяется только при первом появлении слова.
+ */
+final class WordCountTable implements FrequencyTable {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Наибольший размер массивов таблицы
+    private static final int MAX_CAPACITY = 1 << 30;
+    // Приблизительный размер заголовков объекта String и его массива
+    private static final int STRING_OVERHEAD = 40;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    // Приблизительный объём памяти, занятой строками-ключами
+    private long keysMemory = 0;
+
+    @Override
+    public void add(char[] chars, int length, int hash, long count) {
+        final int mask = keys.length - 1;
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && equals(key, chars, length)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, new String(chars, 0, length), hash, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Таблицы в куче сливаются без копирования строк.
+     */
+    @Override
+    public void addAll(FrequencyTable other) {
+        if (!(other instanceof WordCountTable table)) {
+            FrequencyTable.super.addAll(other);
+            return;
+        }
+        for (int i = 0; i < table.keys.length; i++) {
+            final String word = table.keys[i];
+            if (word != null) {
+                add(word, table.hashes[i], table.counts[i]);
+            }
+        }
+    }
+
+    private void add(String word, int hash, long count) {
+        final int mask = keys.length - 1;
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(word)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, word, hash, count);
+    }
+
+    /**
+     * Вычитает из этой таблицы счётчики другой таблицы, все слова которой есть в этой таблице.
+     * Слова, счётчик которых стал нулевым, удаляются, так что время зависит только от размера {@code other}.
+     */
+    void subtractAll(FrequencyTable other) {
+        other.forEach((chars, length, count) -> {
+            final int hash = FrequencyTable.hash(chars, length);
+            final int mask = keys.length - 1;
+            int slot = spread(hash) & mask;
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (hashes[slot] == hash && equals(key, chars, length)) {
+                    counts[slot] -= count;
+                    if (counts[slot] == 0) {
+                        remove(slot);
+                    }
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        });
+    }
+
+    @Override
+    public long get(String word) {
+        final int hash = word.hashCode();
+        final int mask = keys.length - 1;
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(word)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long memoryUsage() {
+        // Ссылка на ключ, хеш и счётчик на каждую ячейку плюс сами строки
+        return (long) keys.length * (Integer.BYTES * 2 + Long.BYTES) + keysMemory;
+    }
+
+    @Override
+    public <E extends Exception> void forEach(EntryConsumer<E> consumer) throws E {
+        char[] buffer = new char[64];
+        for (int i = 0; i < keys.length; i++) {
+            final String key = keys[i];
+            if (key != null) {
+                if (key.length() > buffer.length) {
+                    buffer = new char[Math.max(key.length(), buffer.length * 2)];
+                }
+                key.getChars(0, key.length(), buffer, 0);
+                consumer.accept(buffer, key.length(), counts[i]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Сортируются номера ячеек, а не копии слов.
+     */
+    @Override
+    public <E extends Exception> void forEachSorted(EntryConsumer<E> consumer) throws E {
+        final long[] slots = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                slots[n++] = i;
+            }
+        }
+        IndexSort.sort(slots, n, (a, b) -> keys[(int) a].compareTo(keys[(int) b]));
+
+        char[] buffer = new char[64];
+        for (int i = 0; i < n; i++) {
+            final String key = keys[(int) slots[i]];
+            if (key.length() > buffer.length) {
+                buffer = new char[Math.max(key.length(), buffer.length * 2)];
+            }
+            key.getChars(0, key.length(), buffer, 0);
+            consumer.accept(buffer, key.length(), counts[(int) slots[i]]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Представление не копирует данные: записи создаются по ходу итерации.
+     */
+    @Override
+    public Map<String, Long> asMap() {
+        return new MapView();
+    }
+
+    private void insert(int slot, String key, int hash, long count) {
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        keysMemory += STRING_OVERHEAD + key.length() * 2L;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Удаляет ячейку и сдвигает назад следующие за ней ячейки цепочки проб, которые больше не нашлись бы через дыру.
+     */
+    private void remove(int slot) {
+        keysMemory -= STRING_OVERHEAD + keys[slot].length() * 2L;
+        size--;
+        final int mask = keys.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == null) {
+                break;
+            }
+            final int home = spread(hashes[next]) & mask;
+            // Ячейку можно перенести в дыру, если дыра лежит между её исходной позицией и текущей
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                hashes[hole] = hashes[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        counts[hole] = 0;
+    }
+
+    private void grow() {
+        if (keys.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("Слишком много различных слов: таблица заполнена");
+        }
+        final String[] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        final long[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = spread(oldHashes[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String key, char[] chars, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class MapView extends AbstractMap<String, Long> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String word && WordCountTable.this.get(word) != 0;
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof String word)) {
+                return null;
+            }
+            final long count = WordCountTable.this.get(word);
+            return count != 0 ? count : null;
+        }
+
+        @Override
+        public Set<Entry<String, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Long>> iterator() {
+                    return new Iterator<>() {
+                        private int slot = nextSlot(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Long> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<String, Long> entry = new SimpleImmutableEntry<>(keys[slot], counts[slot]);
+                            slot = nextSlot(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+
+        private int nextSlot(int from) {
+            while (from < keys.length && keys[from] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.alspace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Фильтр слов перед подсчётом: отбрасывает стоп-слова и отсекает окончания.
+ * <p>
+ * Стоп-слова и окончания заранее собираются в префиксные деревья по символам. Анализатор проходит дерево
+ * стоп-слов по мере разбора слова ({@link #nextStopWordNode}) и обычно сходит с него на первых символах,
+ * а когда слово заканчивается, применяет фильтр к слову в переиспользуемом буфере: дерево окончаний
+ * проходится с конца слова. Отброшенное слово не попадает в словарь, не хешируется и не превращается в строку.
+ * <p>
+ * Отсечение окончаний лёгкое: снимается самое длинное известное окончание, если от слова остаётся
+ * не меньше {@link #MIN_STEM_LENGTH} символов. Так формы "слово", "слова", "словами" считаются одним словом.
+ */
+final class WordFilter {
+    // Минимальная длина основы после отсечения окончания
+    static final int MIN_STEM_LENGTH = 3;
+
+    private static final String[] RUSSIAN_ENDINGS = {
+            // прилагательные и причастия
+            "ее", "ие", "ые", "ое", "ими", "ыми", "ей", "ий", "ый", "ой", "ем", "им", "ым", "ом",
+            "его", "ого", "ему", "ому", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею",
+            // существительные
+            "а", "ев", "ов", "е", "иями", "ями", "ами", "и", "ией", "иям", "ям", "ием", "ам", "о", "у",
+            "ах", "иях", "ях", "ы", "ь", "ию", "ью", "ю", "ия", "ья", "я",
+            // глаголы
+            "ла", "на", "ете", "йте", "ли", "ло", "но", "ет", "ют", "ны", "ть", "ешь", "ила", "ыла", "ена",
+            "ите", "или", "ыли", "ило", "ыло", "ено", "ят", "ует", "уют", "ит", "ыт", "ены", "ить", "ыть", "ишь"
+    };
+    private static final String[] ENGLISH_ENDINGS = {"s", "ed", "ing", "ly"};
+    // Окончания, которые не отсекаются, хотя заканчиваются на известное окончание: class, status, analysis
+    private static final String[] KEPT_ENDINGS = {"ss", "us", "is"};
+
+    private final Trie stopWords;
+    private final Trie endings;
+
+    private WordFilter(List<String> stopWordList, boolean stem) {
+        final Map<String, Integer> stopWordKeys = new TreeMap<>();
+        for (String stopWord : stopWordList) {
+            stopWordKeys.put(toWord(stopWord), 0);
+        }
+        this.stopWords = stopWordKeys.isEmpty() ? null : Trie.build(stopWordKeys);
+
+        if (!stem) {
+            this.endings = null;
+            return;
+        }
+        // Окончания хранятся перевёрнутыми, значение - сколько символов отсечь
+        final Map<String, Integer> endingKeys = new TreeMap<>();
+        for (String ending : RUSSIAN_ENDINGS) {
+            endingKeys.put(reverse(ending), ending.length());
+        }
+        for (String ending : ENGLISH_ENDINGS) {
+            endingKeys.put(reverse(ending), ending.length());
+        }
+        for (String ending : KEPT_ENDINGS) {
+            endingKeys.put(reverse(ending), 0);
+        }
+        this.endings = Trie.build(endingKeys);
+    }
+
+    /**
+     * Собирает фильтр для параметров запуска.
+     *
+     * @return фильтр или {@code null}, если не заданы ни стоп-слова, ни отсечение окончаний
+     */
+    static WordFilter of(Options options) {
+        if (options.stopWords.isEmpty() && !options.stem) {
+            return null;
+        }
+        return new WordFilter(options.stopWords, options.stem);
+    }
+
+    /**
+     * Узел дерева стоп-слов, с которого начинается проход по новому слову.
+     *
+     * @return корень дерева или -1, если стоп-слова не заданы
+     */
+    int stopWordsRoot() {
+        return stopWords != null ? Trie.ROOT : -1;
+    }
+
+    /**
+     * Переход по дереву стоп-слов на очередном символе слова.
+     *
+     * @param node текущий узел, не меньше 0
+     * @return следующий узел или -1, если слово уже не может оказаться стоп-словом
+     */
+    int nextStopWordNode(int node, char c) {
+        return stopWords.next(node, c);
+    }
+
+    /**
+     * Применяет фильтр к слову {@code word[0, length)}, записанному в нижнем регистре.
+     *
+     * @param stopWordNode узел дерева стоп-слов, в котором закончился проход по слову, или -1
+     * @return длина слова после отсечения окончания или 0, если слово отброшено
+     */
+    int apply(char[] word, int length, int stopWordNode) {
+        if (stopWordNode >= 0 && stopWords.value(stopWordNode) >= 0) {
+            return 0;
+        }
+        if (endings == null) {
+            return length;
+        }
+        int node = Trie.ROOT;
+        int strip = 0;
+        for (int i = length - 1; i >= MIN_STEM_LENGTH; i--) {
+            node = endings.next(node, word[i]);
+            if (node < 0) {
+                break;
+            }
+            final int value = endings.value(node);
+            if (value >= 0) {
+                strip = value;
+            }
+        }
+        return length - strip;
+    }
+
+    /**
+     * Приводит слово к тому виду, в котором его выдаёт разбор: символы в нижнем регистре по одному.
+     */
+    private static String toWord(String text) {
+        final char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static String reverse(String text) {
+        return new StringBuilder(text).reverse().toString();
+    }
+
+    /**
+     * Префиксное дерево в плоских массивах: рёбра узла лежат подряд и отсортированы по символу.
+     */
+    private static final class Trie {
+        static final int ROOT = 0;
+
+        // Рёбра узла n - [edgeStart[n], edgeStart[n + 1])
+        private final int[] edgeStart;
+        private final char[] edgeChars;
+        private final int[] edgeTargets;
+        // Значение ключа, который заканчивается в узле, или -1
+        private final int[] values;
+
+        private Trie(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] values) {
+            this.edgeStart = edgeStart;
+            this.edgeChars = edgeChars;
+            this.edgeTargets = edgeTargets;
+            this.values = values;
+        }
+
+        /**
+         * Узел при построении.
+         */
+        private static final class Node {
+            final TreeMap<Character, Node> children = new TreeMap<>();
+            int value = -1;
+            int id;
+        }
+
+        static Trie build(Map<String, Integer> keys) {
+            final Node root = new Node();
+            int edges = 0;
+            for (Map.Entry<String, Integer> entry : keys.entrySet()) {
+                Node node = root;
+                for (char c : entry.getKey().toCharArray()) {
+                    Node child = node.children.get(c);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(c, child);
+                        edges++;
+                    }
+                    node = child;
+                }
+                node.value = entry.getValue();
+            }
+
+            // Обход в ширину нумерует узлы так, что рёбра каждого узла занимают непрерывный участок
+            final List<Node> nodes = new ArrayList<>();
+            final ArrayDeque<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                final Node node = queue.poll();
+                node.id = nodes.size();
+                nodes.add(node);
+                queue.addAll(node.children.values());
+            }
+
+            final int[] edgeStart = new int[nodes.size() + 1];
+            final char[] edgeChars = new char[edges];
+            final int[] edgeTargets = new int[edges];
+            final int[] values = new int[nodes.size()];
+            int edge = 0;
+            for (Node node : nodes) {
+                edgeStart[node.id] = edge;
+                values[node.id] = node.value;
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    edgeChars[edge] = child.getKey();
+                    edgeTargets[edge] = child.getValue().id;
+                    edge++;
+                }
+            }
+            edgeStart[nodes.size()] = edge;
+            return new Trie(edgeStart, edgeChars, edgeTargets, values);
+        }
+
+        /**
+         * Переход из узла по символу.
+         *
+         * @return следующий узел или -1, если перехода нет
+         */
+        int next(int node, char c) {
+            int low = edgeStart[node];
+            int high = edgeStart[node + 1] - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final char edgeChar = edgeChars[middle];
+                if (edgeChar < c) {
+                    low = middle + 1;
+                } else if (edgeChar > c) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets[middle];
+                }
+            }
+            return -1;
+        }
+
+        int value(int node) {
+            return values[node];
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.alspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Упорядоченный вывод словаря: K самых частых слов или весь словарь, отсортированный целиком.
+ * <p>
+ * Для K самых частых слов словарь обходится один раз с кучей по минимуму из K элементов,
+ * а строка создаётся только для слова, которое попадает в кучу, поэтому время и память
+ * определяются K, а не размером словаря.
+ * <p>
+ * Весь словарь сортируется в куче только для таблиц, которые и так в ней хранятся. Таблица
+ * с ограниченным объёмом памяти выдаёт алфавитный порядок слиянием своих серий, а в остальных
+ * случаях она и таблица вне кучи сортируются внешней сортировкой ({@link ExternalSort}).
+ */
+final class WordRanking {
+    /**
+     * Слово со счётчиком.
+     */
+    record Entry(String word, long count) {
+    }
+
+    /**
+     * Однократный поток записей словаря, например слияние результатов рабочих процессов.
+     */
+    @FunctionalInterface
+    interface Source<S extends Exception> {
+        void forEach(FrequencyTable.EntryConsumer<RuntimeException> consumer) throws S;
+    }
+
+    // По убыванию частоты, при равной частоте - по алфавиту
+    static final Comparator<Entry> BY_FREQUENCY =
+            Comparator.comparingLong(Entry::count).reversed().thenComparing(Entry::word);
+    static final Comparator<Entry> BY_ALPHABET = Comparator.comparing(Entry::word);
+    // Предел порции внешней сортировки для таблицы вне кучи, у которой нет своего предела памяти
+    private static final long OFF_HEAP_SORT_MEMORY = 64L * 1024 * 1024;
+
+    private WordRanking() {
+    }
+
+    /**
+     * Передаёт слова таблицы в {@code consumer} в заданном порядке.
+     *
+     * @param table    таблица частот
+     * @param top      сколько самых частых слов выдать; 0 - все слова
+     * @param sort     порядок выдачи
+     * @param parallel сортировать весь словарь параллельно
+     */
+    static <E extends Exception> void forEach(FrequencyTable table, int top, Options.Sort sort, boolean parallel,
+                                              FrequencyTable.EntryConsumer<E> consumer) throws E {
+        if (top == 0 && sort == Options.Sort.NONE) {
+            table.forEach(consumer);
+            return;
+        }
+
+        final Comparator<Entry> comparator = sort == Options.Sort.ALPHABET ? BY_ALPHABET : BY_FREQUENCY;
+        if (top == 0) {
+            if (table instanceof SpillingFrequencyTable spilling) {
+                if (sort == Options.Sort.ALPHABET) {
+                    spilling.forEachSorted(consumer);
+                } else {
+                    ExternalSort.forEach(table, comparator, spilling.memoryLimit(), parallel, consumer);
+                }
+                return;
+            }
+            if (table instanceof OffHeapWordTable) {
+                ExternalSort.forEach(table, comparator, OFF_HEAP_SORT_MEMORY, parallel, consumer);
+                return;
+            }
+        }
+
+        final Source<RuntimeException> source = table::forEach;
+        emit(top > 0 ? top(source, top) : all(table), comparator, parallel, consumer);
+    }
+
+    /**
+     * Передаёт слова из однократного потока записей в заданном порядке, не собирая словарь в таблицу:
+     * K самых частых слов отбираются кучей по ходу потока, а весь словарь сортируется внешней сортировкой.
+     * Каждое слово должно встречаться в потоке один раз.
+     *
+     * @param memoryLimit предел объёма порции внешней сортировки в куче в байтах; 0 - предел по умолчанию
+     */
+    static <S extends Exception, E extends Exception> void forEach(Source<S> source, int top, Options.Sort sort,
+                                                                   long memoryLimit, boolean parallel,
+                                                                   FrequencyTable.EntryConsumer<E> consumer)
+            throws S, E {
+        final Comparator<Entry> comparator = sort == Options.Sort.ALPHABET ? BY_ALPHABET : BY_FREQUENCY;
+        if (top > 0) {
+            emit(top(source, top), comparator, parallel, consumer);
+        } else {
+            ExternalSort.forEach(source, comparator, memoryLimit > 0 ? memoryLimit : OFF_HEAP_SORT_MEMORY,
+                    parallel, consumer);
+        }
+    }
+
+    private static <E extends Exception> void emit(Entry[] entries, Comparator<Entry> comparator, boolean parallel,
+                                                   FrequencyTable.EntryConsumer<E> consumer) throws E {
+        if (parallel) {
+            Arrays.parallelSort(entries, comparator);
+        } else {
+            Arrays.sort(entries, comparator);
+        }
+
+        char[] buffer = new char[64];
+        for (Entry entry : entries) {
+            final String word = entry.word();
+            if (word.length() > buffer.length) {
+                buffer = new char[Math.max(word.length(), buffer.length * 2)];
+            }
+            word.getChars(0, word.length(), buffer, 0);
+            consumer.accept(buffer, word.length(), entry.count());
+        }
+    }
+
+    /**
+     * Выбирает {@code limit} самых частых слов за один проход по записям.
+     */
+    private static <S extends Exception> Entry[] top(Source<S> source, int limit) throws S {
+        // В вершине кучи - худший из отобранных: самый редкий, а среди равных - последний по алфавиту
+        final PriorityQueue<Entry> heap = new PriorityQueue<>(limit, BY_FREQUENCY.reversed());
+        source.forEach((chars, length, count) -> {
+            if (heap.size() == limit) {
+                final Entry worst = heap.peek();
+                if (count < worst.count() || count == worst.count() && compare(chars, length, worst.word()) >= 0) {
+                    return;
+                }
+                heap.poll();
+            }
+            heap.add(new Entry(new String(chars, 0, length), count));
+        });
+        return heap.toArray(new Entry[0]);
+    }
+
+    private static Entry[] all(FrequencyTable table) {
+        final List<Entry> entries = new ArrayList<>();
+        table.forEach((chars, length, count) -> entries.add(new Entry(new String(chars, 0, length), count)));
+        return entries.toArray(new Entry[0]);
+    }
+
+    /**
+     * Сравнивает слово {@code chars[0..length)} со строкой так же, как {@link String#compareTo}.
+     */
+    private static int compare(char[] chars, int length, String word) {
+        final int common = Math.min(length, word.length());
+        for (int i = 0; i < common; i++) {
+            if (chars[i] != word.charAt(i)) {
+                return chars[i] - word.charAt(i);
+            }
+        }
+        return length - word.length();
+    }
+}
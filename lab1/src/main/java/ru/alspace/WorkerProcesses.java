@@ -0,0 +1,286 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Подсчёт в нескольких дочерних JVM на одной машине.
+ * <p>
+ * Координатор делит входные файлы на участки примерно равного размера, записывает для каждого рабочего процесса
+ * файл задания и запускает процессы {@code Main worker ЗАДАНИЕ РЕЗУЛЬТАТ}. Каждый процесс считает свои участки
+ * в собственной куче и записывает словарь, отсортированный по словам ({@link SortedEntries}).
+ * Координатор сливает эти файлы потоково, держа в памяти по одному слову из каждого.
+ */
+final class WorkerProcesses implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(WorkerProcesses.class);
+
+    private static final int MAGIC = 0x4C31574B; // "L1WK"
+    private static final int VERSION = 2;
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private final Path directory;
+    private final List<Path> partials = new ArrayList<>();
+    private long totalCount = 0;
+
+    private WorkerProcesses(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Запускает {@code options.workers} рабочих процессов и ждёт их завершения.
+     *
+     * @param files   входные файлы
+     * @param options параметры обработки
+     * @throws IOException если не удалось прочитать входные файлы или один из процессов завершился с ошибкой
+     */
+    static WorkerProcesses run(List<Path> files, Options options) throws IOException {
+        final WorkerProcesses workers = new WorkerProcesses(Files.createTempDirectory("lab1-workers"));
+        try {
+            workers.start(split(files, options.workers), options);
+            return workers;
+        } catch (IOException e) {
+            workers.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Точка входа рабочего процесса: считает участки из файла задания и записывает отсортированный словарь.
+     */
+    static void work(Path task, Path partial) throws IOException {
+        final Options options = new Options();
+        final List<FrequencyAnalyzer.FileRange> ranges = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(task)))) {
+            options.threads = input.readInt();
+            options.mapped = input.readBoolean();
+            options.offHeap = input.readBoolean();
+            options.memoryLimit = input.readLong();
+            options.stem = input.readBoolean();
+            final String[] stopWords = new String[input.readInt()];
+            for (int i = 0; i < stopWords.length; i++) {
+                stopWords[i] = input.readUTF();
+            }
+            options.stopWords = List.of(stopWords);
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final Path file = Path.of(input.readUTF());
+                ranges.add(new FrequencyAnalyzer.FileRange(file, input.readLong(), input.readLong()));
+            }
+        }
+
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(options, ranges);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(partial), IO_BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(analyzer.getWordsCount());
+            SortedEntries.write(output, analyzer.getTable());
+        }
+    }
+
+    /**
+     * Делит файлы на {@code parts} групп участков примерно равного суммарного размера.
+     * Большой файл режется по разделителям, сжатые файлы не режутся.
+     */
+    static List<List<FrequencyAnalyzer.FileRange>> split(List<Path> files, int parts) throws IOException {
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        final long target = Math.max(1, (total + parts - 1) / parts);
+
+        final List<List<FrequencyAnalyzer.FileRange>> groups = new ArrayList<>();
+        List<FrequencyAnalyzer.FileRange> group = new ArrayList<>();
+        long filled = 0;
+        for (Path file : files) {
+            final long size = Files.size(file);
+            final boolean compressed = CompressedInput.isCompressed(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long start = 0;
+                while (start < size) {
+                    long end = compressed ? size : Math.min(size, start + target - filled);
+                    if (end < size) {
+                        end = FrequencyAnalyzer.findSeparator(channel, end, size);
+                    }
+                    group.add(new FrequencyAnalyzer.FileRange(file, start, end));
+                    filled += end - start;
+                    start = end;
+                    if (filled >= target && groups.size() < parts - 1) {
+                        groups.add(group);
+                        group = new ArrayList<>();
+                        filled = 0;
+                    }
+                }
+            }
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private void start(List<List<FrequencyAnalyzer.FileRange>> groups, Options options) throws IOException {
+        final List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                final Path task = directory.resolve("task-" + i);
+                final Path partial = directory.resolve("partial-" + i);
+                writeTask(task, groups.get(i), options);
+                partials.add(partial);
+                processes.add(new ProcessBuilder(command(task, partial)).inheritIO().start());
+            }
+            logger.info("Запущено рабочих процессов: {}", processes.size());
+
+            for (int i = 0; i < processes.size(); i++) {
+                final int exitCode = processes.get(i).waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("Рабочий процесс " + i + " завершился с кодом " + exitCode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание рабочих процессов прервано");
+        } finally {
+            processes.forEach(Process::destroyForcibly);
+        }
+
+        for (Path partial : partials) {
+            try (DataInputStream input = open(partial)) {
+                totalCount += input.readLong();
+            }
+        }
+    }
+
+    private static void writeTask(Path task, List<FrequencyAnalyzer.FileRange> ranges, Options options)
+            throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(task)))) {
+            // Потоки и предел памяти делятся между процессами, а без опции --threads каждый процесс считает
+            // последовательно
+            output.writeInt(options.threads / Math.max(1, options.workers));
+            output.writeBoolean(options.mapped);
+            output.writeBoolean(options.offHeap);
+            output.writeLong(options.memoryLimit / Math.max(1, options.workers));
+            output.writeBoolean(options.stem);
+            output.writeInt(options.stopWords.size());
+            for (String stopWord : options.stopWords) {
+                output.writeUTF(stopWord);
+            }
+            output.writeInt(ranges.size());
+            for (FrequencyAnalyzer.FileRange range : ranges) {
+                output.writeUTF(range.file().toAbsolutePath().toString());
+                output.writeLong(range.start());
+                output.writeLong(range.end());
+            }
+        }
+    }
+
+    /**
+     * Команда запуска рабочего процесса с той же JVM, её параметрами и путём к классам.
+     */
+    private static List<String> command(Path task, Path partial) {
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // Отладчик слушает порт, который дочерний процесс занять не сможет
+            if (!argument.startsWith("-agentlib:jdwp")) {
+                command.add(argument);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("worker");
+        command.add(task.toString());
+        command.add(partial.toString());
+        return command;
+    }
+
+    /**
+     * Общее количество слов во всех участках.
+     */
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Сливает результаты рабочих процессов и передаёт слова в {@code consumer} в алфавитном порядке.
+     */
+    <E extends Exception> void merge(FrequencyTable.EntryConsumer<E> consumer) throws IOException, E {
+        final List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            final PriorityQueue<SortedEntries.Reader> queue = new PriorityQueue<>(SortedEntries.Reader::compareTo);
+            for (Path partial : partials) {
+                final DataInputStream input = open(partial);
+                inputs.add(input);
+                input.readLong();
+                final SortedEntries.Reader reader = new SortedEntries.Reader(input);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                final SortedEntries.Reader first = queue.poll();
+                long count = first.count();
+                while (!queue.isEmpty() && queue.peek().sameWord(first)) {
+                    final SortedEntries.Reader same = queue.poll();
+                    count += same.count();
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+                final char[] word = first.word().toCharArray();
+                consumer.accept(word, word.length, count);
+                if (first.next()) {
+                    queue.add(first);
+                }
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Открывает результат рабочего процесса и проверяет заголовок; поток остаётся перед количеством слов.
+     */
+    private static DataInputStream open(Path partial) throws IOException {
+        final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(partial), IO_BUFFER_SIZE));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            input.close();
+            throw new IOException("Файл `" + partial + "` не является результатом рабочего процесса");
+        }
+        return input;
+    }
+
+    /**
+     * Удаляет файлы заданий и результатов.
+     */
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+}
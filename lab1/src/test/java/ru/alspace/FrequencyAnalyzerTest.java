@@ -0,0 +1,289 @@
+package ru.alspace;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.alspace.TestTexts.corpus;
+import static ru.alspace.TestTexts.corpusCounts;
+import static ru.alspace.TestTexts.corpusFile;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.options;
+import static ru.alspace.TestTexts.sequential;
+
+public class FrequencyAnalyzerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSequentialCounts() {
+        final FrequencyAnalyzer analyzer = sequential("Мама мыла раму, мама!\nRAMA rama 42");
+
+        assertEquals(7, analyzer.getWordsCount());
+        assertEquals(2L, analyzer.getFrequency().get("мама"));
+        assertEquals(1L, analyzer.getFrequency().get("мыла"));
+        assertEquals(2L, analyzer.getFrequency().get("rama"));
+        assertEquals(1L, analyzer.getFrequency().get("42"));
+    }
+
+    @Test
+    void testParallelMatchesSequential() throws IOException {
+        final FrequencyAnalyzer expected = corpusCounts();
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(corpusFile(), options(4, false, false));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testMappedMatchesSequential() throws IOException {
+        final String text = generateText(1024 * 1024, 2);
+        final Path file = tempDir.resolve("input.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        final FrequencyAnalyzer expected = sequential(text);
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(file, options(1, true, false));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testMappedMalformedInput() throws IOException {
+        // Обрезанные и некорректные последовательности UTF-8 должны разбираться как при декодировании
+        final byte[] bytes = {
+                'a', (byte) 0xD0, 'b', ' ', (byte) 0xE2, (byte) 0x82, 'c', ' ',
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80, 'd', ' ', (byte) 0xC3, (byte) 0xA4, 'e', (byte) 0xC3
+        };
+        final Path file = tempDir.resolve("malformed.txt");
+        Files.write(file, bytes);
+
+        final FrequencyAnalyzer expected = new FrequencyAnalyzer(new ByteArrayInputStream(bytes));
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(file, options(1, true, false));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testParallelMappedMatchesSequential() throws IOException {
+        final FrequencyAnalyzer expected = corpusCounts();
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(corpusFile(), options(4, true, false));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testDirectoryMatchesSequential() throws IOException {
+        // Много мелких файлов, которые попадут в пакеты, и один файл, который делится на участки
+        final Path corpus = Files.createDirectories(tempDir.resolve("corpus/nested"));
+        final StringBuilder small = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            final String text = generateText(8 * 1024, 100 + i);
+            Files.writeString(corpus.resolve("small" + i + ".txt"), text, StandardCharsets.UTF_8);
+            small.append(text).append('\n');
+        }
+        Files.copy(corpusFile(), tempDir.resolve("corpus/large.txt"));
+        Files.writeString(tempDir.resolve("corpus/skipped.csv"), "не входит в шаблон");
+
+        final List<Path> files = InputFiles.resolve(List.of(tempDir + "/corpus/**.txt"));
+        assertEquals(201, files.size());
+
+        final FrequencyAnalyzer smallCounts = sequential(small.toString());
+        final Map<String, Long> expected = new HashMap<>(corpusCounts().getFrequency());
+        smallCounts.getFrequency().forEach((word, count) -> expected.merge(word, count, Long::sum));
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(files, options(4, false, false));
+
+        assertEquals(corpusCounts().getWordsCount() + smallCounts.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected, actual.getFrequency());
+        assertEquals(202, InputFiles.resolve(List.of(tempDir.resolve("corpus").toString())).size());
+    }
+
+    @Test
+    void testPipelinedStreamMatchesSequential() {
+        // Слово длиннее блока конвейера и поток, отдающий данные мелкими порциями, как канал
+        final String text = generateText(2 * 1024 * 1024, 9) + " " + "я".repeat(3 * 1024 * 1024) + " "
+                + generateText(512 * 1024, 10);
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final InputStream pipe = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, 10_000));
+            }
+        };
+
+        final FrequencyAnalyzer expected = sequential(text);
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(pipe, options(4, false, false));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 4})
+    void testCompressedMatchesSequential(int threads) throws IOException {
+        final String text = generateText(1024 * 1024, 11);
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final Path gzip = tempDir.resolve("input.txt.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            output.write(bytes);
+        }
+        final Path zlib = tempDir.resolve("input.txt.z");
+        try (OutputStream output = new DeflaterOutputStream(Files.newOutputStream(zlib))) {
+            output.write(bytes);
+        }
+
+        final FrequencyAnalyzer expected = sequential(text);
+        for (Path file : List.of(gzip, zlib)) {
+            final FrequencyAnalyzer actual = new FrequencyAnalyzer(file, options(threads, false, false));
+            assertEquals(expected.getWordsCount(), actual.getWordsCount());
+            assertEquals(expected.getFrequency(), actual.getFrequency());
+        }
+
+        // Сжатый файл среди обычных при обработке нескольких файлов
+        final Path plain = tempDir.resolve("plain.txt");
+        Files.writeString(plain, text, StandardCharsets.UTF_8);
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(List.of(gzip, plain), options(4, false, false));
+        assertEquals(expected.getWordsCount() * 2, actual.getWordsCount());
+        assertEquals(expected.getFrequency().get("мир") * 2, actual.getFrequency().get("мир"));
+    }
+
+    @Test
+    void testTextWithZlibHeaderIsPlain() throws IOException {
+        // "x^" - те же байты, что и заголовок zlib 78 5E, но у файла нет расширения сжатого zlib
+        final String text = "x^ мир x^ hello";
+        final Path file = Files.writeString(tempDir.resolve("formula.txt"), text, StandardCharsets.UTF_8);
+
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(file, options(0, false, false));
+        assertEquals(sequential(text).getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testAsciiClassificationMatchesCharacter() throws IOException {
+        // Все ASCII-символы вперемешку с не-ASCII буквами, чтобы векторные участки чередовались с обычными
+        final Random random = new Random(12);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2 * 1024 * 1024; i++) {
+            builder.append(random.nextInt(50) == 0 ? "ÄжΩ".charAt(random.nextInt(3)) : (char) random.nextInt(128));
+        }
+        final String text = builder.toString();
+
+        // Эталон: посимвольная классификация через Character
+        final Map<String, Long> reference = new HashMap<>();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (!word.isEmpty()) {
+                reference.merge(word.toString(), 1L, Long::sum);
+                word.setLength(0);
+            }
+        }
+
+        final Path file = tempDir.resolve("ascii.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        final InputStream stream = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(reference, sequential(text).getFrequency());
+        assertEquals(reference, new FrequencyAnalyzer(file, options(1, true, false)).getFrequency());
+        assertEquals(reference, new FrequencyAnalyzer(stream, options(4, false, false)).getFrequency());
+    }
+
+    @Test
+    void testStopWordsAndStemming() {
+        final Options options = new Options();
+        options.stopWords = List.of("и", "The", "and");
+        options.stem = true;
+        // "th" и "then" - начало стоп-слова и его продолжение, они не отбрасываются
+        final String text = "Кошки и коты, кошка и КОТ; the cats played and the cat plays class th then";
+        final FrequencyAnalyzer analyzer = sequential(text, options);
+
+        assertEquals(11, analyzer.getWordsCount());
+        assertEquals(Map.of("кошк", 2L, "кот", 2L, "cat", 2L, "play", 2L, "class", 1L, "th", 1L, "then", 1L),
+                new HashMap<>(analyzer.getFrequency()));
+    }
+
+    @Test
+    void testParallelFilterMatchesSequential() throws IOException {
+        final Options sequentialOptions = new Options();
+        sequentialOptions.stopWords = List.of("мир", "X");
+        sequentialOptions.stem = true;
+        final FrequencyAnalyzer expected = sequential(corpus(), sequentialOptions);
+        final Options parallelOptions = options(4, true, false);
+        parallelOptions.stopWords = sequentialOptions.stopWords;
+        parallelOptions.stem = true;
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(corpusFile(), parallelOptions);
+
+        assertFalse(expected.getFrequency().containsKey("мир"));
+        assertFalse(expected.getFrequency().containsKey("x"));
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(new HashMap<>(expected.getFrequency()), new HashMap<>(actual.getFrequency()));
+    }
+
+    @Test
+    void testStatisticsEvents() throws IOException {
+        final Path file = corpusFile();
+        final Path dump = tempDir.resolve("run.jfr");
+
+        final FrequencyAnalyzer analyzer;
+        try (Recording recording = new Recording()) {
+            recording.enable("ru.alspace.Phase");
+            recording.enable("ru.alspace.Progress");
+            recording.start();
+            analyzer = new FrequencyAnalyzer(file, options(0, false, false));
+            new RunStatistics().record(analyzer);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        assertEquals(Files.size(file), analyzer.getBytesCount());
+        assertTrue(analyzer.getReadNanos() > 0 && analyzer.getDecodeNanos() > 0 && analyzer.getParseNanos() > 0);
+
+        final List<String> phases = new ArrayList<>();
+        long progressBytes = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (event.getEventType().getName().equals("ru.alspace.Phase")) {
+                phases.add(event.getString("phase"));
+            } else {
+                progressBytes = Math.max(progressBytes, event.getLong("bytes"));
+                assertEquals(analyzer.getDistinctWordsCount(), event.getLong("distinct"));
+            }
+        }
+        assertEquals(List.of("Чтение", "Декодирование UTF-8", "Разбор слов и обновление словаря"), phases);
+        assertEquals(analyzer.getBytesCount(), progressBytes);
+    }
+
+    @Test
+    void testParallelEmptyFile() throws IOException {
+        final Path file = tempDir.resolve("empty.txt");
+        Files.writeString(file, "");
+
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(file, options(2, false, false));
+        assertEquals(0, analyzer.getWordsCount());
+        assertEquals(0, analyzer.getFrequency().size());
+    }
+}
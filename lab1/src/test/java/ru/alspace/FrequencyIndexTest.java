@@ -0,0 +1,61 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.sequential;
+import static ru.alspace.TestTexts.uniqueWords;
+
+/**
+ * Тесты двоичного индекса частот.
+ */
+public class FrequencyIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testIndexLookups() throws IOException {
+        final String text = generateText(1024 * 1024, 24) + " " + String.join(" ", uniqueWords(1_000));
+        final FrequencyAnalyzer analyzer = sequential(text);
+        final Path file = tempDir.resolve("frequency.idx");
+        FrequencyIndex.write(file, analyzer);
+
+        final FrequencyIndex index = FrequencyIndex.open(file);
+        assertEquals(analyzer.getDistinctWordsCount(), index.size());
+        assertEquals(analyzer.getTotalCount(), index.getTotalCount());
+        for (Map.Entry<String, Long> entry : analyzer.getFrequency().entrySet()) {
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+        assertEquals(0, index.get("нет"));
+        assertEquals(0, index.get("слово1000"));
+
+        final List<String> words = new ArrayList<>();
+        index.forEachWithPrefix("слово99", (chars, length, count) -> words.add(new String(chars, 0, length)));
+        assertEquals(List.of("слово99", "слово990", "слово991", "слово992", "слово993", "слово994",
+                "слово995", "слово996", "слово997", "слово998", "слово999"), words);
+    }
+
+    @Test
+    void testEmptyIndex() throws IOException {
+        final Path file = tempDir.resolve("empty.idx");
+        FrequencyIndex.write(file, sequential(""));
+
+        // Временные разделы индекса удаляются после записи
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+        final FrequencyIndex index = FrequencyIndex.open(file);
+        assertEquals(0, index.size());
+        assertEquals(0, index.get("слово"));
+    }
+}
@@ -0,0 +1,215 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.alspace.TestTexts.WORDS;
+import static ru.alspace.TestTexts.corpusCounts;
+import static ru.alspace.TestTexts.corpusFile;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.options;
+import static ru.alspace.TestTexts.sequential;
+import static ru.alspace.TestTexts.uniqueWords;
+
+/**
+ * Общие тесты для всех реализаций {@link FrequencyTable} и подсчёт с каждой из них.
+ */
+public class FrequencyTableTest {
+    @TempDir
+    Path tempDir;
+
+    static Stream<Arguments> tables() {
+        return Stream.of(
+                Arguments.of("heap", (Supplier<FrequencyTable>) WordCountTable::new),
+                Arguments.of("off-heap", (Supplier<FrequencyTable>) OffHeapWordTable::new),
+                // Маленький предел, чтобы таблица сбрасывалась на диск много раз
+                Arguments.of("spilling", (Supplier<FrequencyTable>) () ->
+                        new SpillingFrequencyTable(WordCountTable::new, 64 * 1024))
+        );
+    }
+
+    private static void add(FrequencyTable table, String word, long count) {
+        table.add(word.toCharArray(), word.length(), word.hashCode(), count);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("tables")
+    void testIncrementFromBuffer(String name, Supplier<FrequencyTable> factory) {
+        final FrequencyTable table = factory.get();
+        final char[] buffer = "словоxyz".toCharArray();
+
+        table.increment(buffer, 5, "слово".hashCode());
+        table.increment(buffer, 5, "слово".hashCode());
+        add(table, "xyz", 1);
+
+        assertEquals(2, table.size());
+        assertEquals(2, table.get("слово"));
+        assertEquals(1, table.get("xyz"));
+        assertEquals(0, table.get("нет"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("tables")
+    void testManyWordsSurviveGrowth(String name, Supplier<FrequencyTable> factory) {
+        final FrequencyTable table = factory.get();
+        final Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 300_000; i++) {
+            final String word = (i % 2 == 0 ? "w" : "ж") + (i % 100_000);
+            add(table, word, 1);
+            expected.merge(word, 1L, Long::sum);
+        }
+
+        // Копия в HashMap: у сбрасываемой на диск таблицы поиск в представлении требует слияния серий
+        assertEquals(expected, new HashMap<>(table.asMap()));
+        assertEquals(table.asMap(), expected);
+
+        final Map<String, Long> streamed = new HashMap<>();
+        table.forEach((chars, length, count) -> streamed.put(new String(chars, 0, length), count));
+        assertEquals(expected, streamed);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("tables")
+    void testForEachSorted(String name, Supplier<FrequencyTable> factory) {
+        final FrequencyTable table = factory.get();
+        final Random random = new Random(5);
+        final Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            // Символы из разных диапазонов UTF-8, включая суррогаты, и слова-префиксы друг друга
+            final String word = WORDS[random.nextInt(WORDS.length)] + (random.nextInt(3) == 0 ? "" : "😀")
+                    + Integer.toString(random.nextInt(20_000), 7);
+            add(table, word, 1);
+            expected.merge(word, 1L, Long::sum);
+        }
+
+        final List<String> words = new ArrayList<>();
+        table.forEachSorted((chars, length, count) -> {
+            final String word = new String(chars, 0, length);
+            assertEquals(expected.get(word), count);
+            words.add(word);
+        });
+        final List<String> sorted = new ArrayList<>(expected.keySet());
+        Collections.sort(sorted);
+        assertEquals(sorted, words);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("tables")
+    void testAddAll(String name, Supplier<FrequencyTable> factory) {
+        final FrequencyTable left = factory.get();
+        final FrequencyTable heap = new WordCountTable();
+        final FrequencyTable offHeap = new OffHeapWordTable();
+        add(left, "a", 1);
+        add(heap, "a", 1);
+        add(heap, "b", 1);
+        add(offHeap, "c", 5);
+        add(offHeap, "ёлка", 2);
+
+        left.addAll(heap);
+        left.addAll(offHeap);
+
+        assertEquals(Map.of("a", 2L, "b", 1L, "c", 5L, "ёлка", 2L), new HashMap<>(left.asMap()));
+        assertNull(left.asMap().get("d"));
+    }
+
+    @Test
+    void testSubtractAllRemovesWords() {
+        // Много слов в маленьком диапазоне хешей, чтобы удаление сдвигало длинные цепочки проб
+        final WordCountTable table = new WordCountTable();
+        final Map<String, Long> expected = new HashMap<>();
+        final Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            final WordCountTable bucket = new WordCountTable();
+            for (int i = 0; i < 5_000; i++) {
+                add(bucket, "w" + random.nextInt(20_000), 1);
+            }
+            table.addAll(bucket);
+            bucket.forEach((chars, length, count) -> expected.merge(new String(chars, 0, length), count, Long::sum));
+
+            if (round % 2 == 1) {
+                table.subtractAll(bucket);
+                bucket.forEach((chars, length, count) -> expected.compute(new String(chars, 0, length),
+                        (word, value) -> value == count ? null : value - count));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected, new HashMap<>(table.asMap()));
+        for (String word : expected.keySet()) {
+            assertEquals(expected.get(word), table.get(word));
+        }
+    }
+
+    @Test
+    void testOffHeapMatchesSequential() throws IOException {
+        final FrequencyAnalyzer expected = corpusCounts();
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(corpusFile(), options(4, true, true));
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+    }
+
+    @Test
+    void testMemoryLimitMatchesSequential() throws IOException {
+        final String text = generateText(1024 * 1024, 5) + " " + String.join(" ", uniqueWords(50_000));
+        final Path file = tempDir.resolve("input.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        final Options options = options(2, false, false);
+        options.memoryLimit = 256 * 1024;
+        final FrequencyAnalyzer expected = sequential(text);
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(file, options);
+
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), new HashMap<>(actual.getFrequency()));
+
+        // При сбросе на диск слова выдаются по алфавиту
+        final List<String> words = new ArrayList<>();
+        actual.forEachWord((chars, length, count) -> words.add(new String(chars, 0, length)));
+        final List<String> sorted = new ArrayList<>(words);
+        Collections.sort(sorted);
+        assertEquals(sorted, words);
+    }
+
+    @Test
+    void testApproximateTopWords() throws IOException {
+        // Корпус и 50 000 слов, встречающихся по одному разу, в отдельном файле
+        final Path unique = Files.writeString(tempDir.resolve("unique.txt"), String.join(" ", uniqueWords(50_000)));
+        final Options options = options(4, true, false);
+        options.approximate = WORDS.length;
+        final FrequencyAnalyzer expected = corpusCounts();
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(List.of(corpusFile(), unique), options);
+
+        assertEquals(expected.getWordsCount() + 50_000, actual.getWordsCount());
+        // Самые частые слова - слова генератора, оценки не меньше точных и укладываются в погрешность
+        final Map<String, Long> top = actual.getFrequency();
+        assertEquals(WORDS.length, top.size());
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            final long exact = expected.getFrequency().get(entry.getKey());
+            assertTrue(exact > 1, entry.getKey());
+            assertTrue(entry.getValue() >= exact && entry.getValue() <= exact + actual.getFrequencyError());
+        }
+
+        final long distinct = expected.getDistinctWordsCount() + 50_000;
+        assertTrue(Math.abs(actual.getDistinctWordsCount() - distinct) < distinct * 0.05);
+    }
+}
@@ -0,0 +1,86 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.alspace.TestTexts.corpus;
+import static ru.alspace.TestTexts.corpusFile;
+import static ru.alspace.TestTexts.options;
+import static ru.alspace.TestTexts.sequential;
+import static ru.alspace.TestTexts.uniqueWords;
+
+/**
+ * Тесты подсчёта N-грамм.
+ */
+public class NgramCounterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNgramCounts() {
+        final Options options = new Options();
+        options.ngram = 2;
+        final FrequencyAnalyzer analyzer = sequential("Мама мыла раму, мама мыла пол", options);
+
+        assertEquals(6, analyzer.getWordsCount());
+        assertEquals(5, analyzer.getTotalCount());
+        assertEquals(Map.of("мама мыла", 2L, "мыла раму", 1L, "раму мама", 1L, "мыла пол", 1L),
+                new HashMap<>(analyzer.getFrequency()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 4})
+    void testParallelNgramsMatchSequential(int n) throws IOException {
+        final Options sequentialOptions = new Options();
+        sequentialOptions.ngram = n;
+        final FrequencyAnalyzer expected = sequential(corpus(), sequentialOptions);
+        final Options parallelOptions = options(4, true, false);
+        parallelOptions.ngram = n;
+        final FrequencyAnalyzer actual = new FrequencyAnalyzer(corpusFile(), parallelOptions);
+
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(new HashMap<>(expected.getFrequency()), new HashMap<>(actual.getFrequency()));
+    }
+
+    @Test
+    void testNgramsDoNotSpanFiles() throws IOException {
+        final Path first = Files.writeString(tempDir.resolve("first.txt"), "a b");
+        final Path second = Files.writeString(tempDir.resolve("second.txt"), "c d");
+        final Options options = options(2, false, false);
+        options.ngram = 2;
+
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(List.of(first, second), options);
+        assertEquals(Map.of("a b", 1L, "c d", 1L), new HashMap<>(analyzer.getFrequency()));
+    }
+
+    @Test
+    void testManyDistinctWords() {
+        // Больше 65 535 различных слов - столько помещалось бы при упаковке четырёх номеров в один long
+        final List<String> words = uniqueWords(70_000);
+        final NgramCounter whole = new NgramCounter(4);
+        final NgramCounter first = new NgramCounter(4);
+        final NgramCounter second = new NgramCounter(4);
+        for (int i = 0; i < words.size(); i++) {
+            final char[] chars = words.get(i).toCharArray();
+            final int hash = FrequencyTable.hash(chars, chars.length);
+            whole.add(chars, chars.length, hash, 1);
+            (i < words.size() / 2 ? first : second).add(chars, chars.length, hash, 1);
+        }
+        first.append(second);
+
+        assertEquals(words.size() - 3, whole.size());
+        assertEquals(1, whole.get("слово69996 слово69997 слово69998 слово69999"));
+        assertEquals(0, whole.get("слово69997 слово69996 слово69998 слово69999"));
+        assertEquals(new HashMap<>(whole.asMap()), new HashMap<>(first.asMap()));
+    }
+}
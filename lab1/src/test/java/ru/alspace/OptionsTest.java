@@ -0,0 +1,31 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тесты разбора параметров командной строки.
+ */
+public class OptionsTest {
+    @Test
+    void testApproximateRejectsTableOptions() {
+        // Приближённый подсчёт не использует ни таблицу вне кучи, ни сброс словаря на диск
+        assertThrows(IllegalArgumentException.class, () ->
+                Options.parse(new String[]{"--approximate", "10", "--memory-limit", "64", "in.txt", "out.csv"}));
+        assertThrows(IllegalArgumentException.class, () ->
+                Options.parse(new String[]{"--approximate", "10", "--off-heap", "in.txt", "out.csv"}));
+        assertEquals(10, Options.parse(new String[]{"--approximate", "10", "in.txt", "out.csv"}).approximate);
+    }
+
+    @Test
+    void testNgramRejectsTableOptions() {
+        // Таблицы N-грамм хранятся только в куче и не сбрасываются на диск
+        assertThrows(IllegalArgumentException.class, () ->
+                Options.parse(new String[]{"--ngram", "2", "--memory-limit", "64", "in.txt", "out.csv"}));
+        assertThrows(IllegalArgumentException.class, () ->
+                Options.parse(new String[]{"--ngram", "2", "--off-heap", "in.txt", "out.csv"}));
+        assertEquals(2, Options.parse(new String[]{"--ngram", "2", "in.txt", "out.csv"}).ngram);
+    }
+}
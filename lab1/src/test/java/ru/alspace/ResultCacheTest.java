@@ -0,0 +1,71 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.alspace.TestTexts.generateText;
+
+/**
+ * Тесты кэша результатов.
+ */
+public class ResultCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResultCacheKeyDependsOnContent() throws IOException {
+        final String text = generateText(256 * 1024, 25);
+        final Path first = tempDir.resolve("first.txt");
+        final Path copy = Files.createDirectories(tempDir.resolve("copy")).resolve("other.txt");
+        final Path changed = tempDir.resolve("changed.txt");
+        Files.writeString(first, text);
+        Files.writeString(copy, text);
+        Files.writeString(changed, text + "мир");
+
+        final Options options = new Options();
+        final String key = ResultCache.key(List.of(first), options);
+        assertEquals(key, ResultCache.key(List.of(copy), options));
+        assertNotEquals(key, ResultCache.key(List.of(changed), options));
+        options.threads = 4;
+        assertEquals(key, ResultCache.key(List.of(first), options));
+        options.ngram = 2;
+        assertNotEquals(key, ResultCache.key(List.of(first), options));
+
+        // Те же байты, разделённые на два файла по-другому, дают другой ключ
+        final Path head = tempDir.resolve("head.txt");
+        final Path tail = tempDir.resolve("tail.txt");
+        Files.writeString(head, "при");
+        Files.writeString(tail, "вет");
+        final Path joined = tempDir.resolve("joined.txt");
+        Files.writeString(joined, "привет");
+        assertNotEquals(ResultCache.key(List.of(head, tail), options), ResultCache.key(List.of(joined), options));
+    }
+
+    @Test
+    void testResultCacheRestoresOutput() throws IOException {
+        final Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "привет мир");
+        final Options options = new Options();
+        options.inputFiles = List.of(input.toString());
+        options.outputFile = tempDir.resolve("out.csv").toString();
+        options.cache = tempDir.resolve("cache").toString();
+
+        final ResultCache cache = ResultCache.open(options);
+        assertFalse(cache.restore());
+        Files.writeString(Path.of(options.outputFile), "результат");
+        cache.store();
+
+        options.outputFile = tempDir.resolve("restored.csv").toString();
+        assertTrue(ResultCache.open(options).restore());
+        assertEquals("результат", Files.readString(Path.of(options.outputFile)));
+    }
+}
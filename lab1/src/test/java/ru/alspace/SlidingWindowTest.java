@@ -0,0 +1,54 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Тесты режима скользящего окна.
+ */
+public class SlidingWindowTest {
+    @Test
+    void testSlidingWindowEvictsOldBuckets() throws IOException {
+        final SlidingWindow window = new SlidingWindow(2);
+        final String[] buckets = {"a a b", "b c", "c c d", ""};
+        final List<Map<String, Long>> expected = List.of(
+                Map.of("a", 2L, "b", 1L),
+                Map.of("a", 2L, "b", 2L, "c", 1L),
+                Map.of("b", 1L, "c", 3L, "d", 1L),
+                Map.of("c", 2L, "d", 1L));
+
+        final FrequencyAnalyzer analyzer = new FrequencyAnalyzer(new Options());
+        long wordsBefore = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            final char[] chars = (buckets[i] + " ").toCharArray();
+            analyzer.parse(chars, 0, chars.length);
+            window.add(analyzer.takeTable(), analyzer.getWordsCount() - wordsBefore);
+            wordsBefore = analyzer.getWordsCount();
+
+            final Map<String, Long> actual = new HashMap<>();
+            window.forEachTop(10, (word, length, count) -> actual.put(new String(word, 0, length), count));
+            assertEquals(expected.get(i), actual);
+            assertEquals(expected.get(i).size(), window.size());
+            assertEquals(expected.get(i).values().stream().mapToLong(Long::longValue).sum(), window.getWordsCount());
+        }
+
+        // Весь вход, прочитанный быстрее интервала, попадает в один отчёт
+        final Options options = new Options();
+        options.window = 1;
+        options.top = 2;
+        final StringWriter output = new StringWriter();
+        SlidingWindow.tail(new ByteArrayInputStream("x y y z z z".getBytes(StandardCharsets.UTF_8)), options, output);
+        final List<String> lines = output.toString().lines().map(line -> line.substring(line.indexOf(", ") + 2))
+                .toList();
+        assertEquals(List.of("Слово, Частота, Частота (в %)", "z, 3, 50", "y, 2, 33"), lines);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.options;
+import static ru.alspace.TestTexts.sequential;
+
+/**
+ * Тесты инкрементального подсчёта со снимком.
+ */
+public class SnapshotTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSnapshotCountsOnlyNewData() throws IOException {
+        final Path snapshot = tempDir.resolve("corpus.snapshot");
+        final Path first = tempDir.resolve("first.txt");
+        final Path second = tempDir.resolve("second.txt");
+        final String firstText = generateText(200 * 1024, 21) + "незакон";
+        final String secondText = generateText(100 * 1024, 22);
+        Files.writeString(first, firstText, StandardCharsets.UTF_8);
+        Files.writeString(second, secondText, StandardCharsets.UTF_8);
+        final Options options = options(2, false, false);
+
+        FrequencyAnalyzer actual = Snapshot.update(snapshot, List.of(first, second), options);
+        assertEquals(sequential(firstText + "\n" + secondText).getFrequency(), actual.getFrequency());
+
+        // Дописанные байты продолжают последнее слово первого файла, и в корпус добавляется новый файл
+        final String appended = "ченное слово " + generateText(50 * 1024, 23);
+        Files.writeString(first, appended, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        final Path third = Files.writeString(tempDir.resolve("third.txt"), "Новый файл", StandardCharsets.UTF_8);
+        final FrequencyAnalyzer expected = sequential(firstText + appended + "\n" + secondText + "\nНовый файл");
+
+        actual = Snapshot.update(snapshot, List.of(first, second, third), options);
+        assertEquals(expected.getWordsCount(), actual.getWordsCount());
+        assertEquals(expected.getFrequency(), actual.getFrequency());
+        assertEquals(1, actual.getFrequency().get("незаконченное"));
+
+        // Изменение уже учтённой части файла приводит к полному пересчёту
+        Files.writeString(second, "другой текст", StandardCharsets.UTF_8);
+        actual = Snapshot.update(snapshot, List.of(first, second, third), options);
+        assertEquals(sequential(firstText + appended + "\nдругой текст\nНовый файл").getFrequency(),
+                actual.getFrequency());
+    }
+
+    @Test
+    void testSnapshotDetectsEditInTheMiddle() throws IOException {
+        // Правка посередине учтённой части, далеко от её начала и конца, при том же размере файла
+        final Path snapshot = tempDir.resolve("edited.snapshot");
+        final String text = generateText(512 * 1024, 25);
+        final Path file = Files.writeString(tempDir.resolve("edited.txt"), text, StandardCharsets.UTF_8);
+        final Options options = options(0, false, false);
+        Snapshot.update(snapshot, List.of(file), options);
+
+        final byte[] bytes = Files.readAllBytes(file);
+        int middle = bytes.length / 2;
+        while (bytes[middle] < 'a' || bytes[middle] > 'z') {
+            middle++;
+        }
+        bytes[middle] = (byte) (bytes[middle] == 'q' ? 'w' : 'q');
+        Files.write(file, bytes);
+        assertEquals(sequential(new String(bytes, StandardCharsets.UTF_8)).getFrequency(),
+                Snapshot.update(snapshot, List.of(file), options).getFrequency());
+    }
+
+    @Test
+    void testSnapshotWithMemoryLimit() throws IOException {
+        // Словарь таблицы с ограниченной памятью записывается слиянием серий и читается обратно без потерь
+        final Path snapshot = tempDir.resolve("limited.snapshot");
+        final String text = generateText(300 * 1024, 24) + " " + String.join(" ", TestTexts.uniqueWords(20_000));
+        final Path file = Files.writeString(tempDir.resolve("limited.txt"), text, StandardCharsets.UTF_8);
+        final Options options = options(0, false, false);
+        options.memoryLimit = 64 * 1024;
+
+        final Map<String, Long> expected = sequential(text).getFrequency();
+        assertEquals(expected, Snapshot.update(snapshot, List.of(file), options).getFrequency());
+        assertEquals(expected, Snapshot.update(snapshot, List.of(file), options).getFrequency());
+    }
+}
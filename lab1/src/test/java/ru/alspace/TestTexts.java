@@ -0,0 +1,109 @@
+package ru.alspace;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Входные данные тестов: генератор текста и общий корпус, который создаётся один раз на весь запуск тестов.
+ */
+final class TestTexts {
+    static final String[] WORDS = {
+            "Привет", "мир", "hello", "World", "123", "ёжик", "x", "Straße", "日本語", "a1b2"
+    };
+    private static final String[] SEPARATORS = {" ", ", ", "\n", "\r\n", " - ", "!", "\t", "😀"};
+    // Корпус больше блока чтения анализатора (16 МБ), чтобы файл гарантированно делился на участки
+    private static final int CORPUS_SIZE = 20 * 1024 * 1024;
+
+    private static String corpus;
+    private static Path corpusFile;
+    private static FrequencyAnalyzer corpusCounts;
+
+    private TestTexts() {
+    }
+
+    /**
+     * Генерирует текст примерно заданного размера (в байтах UTF-8) из фиксированного набора слов.
+     */
+    static String generateText(int approximateSize, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder();
+        int size = 0;
+        while (size < approximateSize) {
+            final String word = WORDS[random.nextInt(WORDS.length)];
+            final String separator = SEPARATORS[random.nextInt(SEPARATORS.length)];
+            builder.append(word).append(separator);
+            size += word.length() + separator.length();
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Общий корпус: текст, который делится анализатором на несколько участков.
+     */
+    static synchronized String corpus() {
+        if (corpus == null) {
+            corpus = generateText(CORPUS_SIZE, 1);
+        }
+        return corpus;
+    }
+
+    /**
+     * Файл с общим корпусом; удаляется при завершении JVM. Тесты не должны его изменять.
+     */
+    static synchronized Path corpusFile() {
+        if (corpusFile == null) {
+            try {
+                final Path file = Files.createTempFile("lab1-corpus-", ".txt");
+                file.toFile().deleteOnExit();
+                Files.writeString(file, corpus(), StandardCharsets.UTF_8);
+                corpusFile = file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return corpusFile;
+    }
+
+    /**
+     * Эталонный последовательный подсчёт общего корпуса.
+     */
+    static synchronized FrequencyAnalyzer corpusCounts() {
+        if (corpusCounts == null) {
+            corpusCounts = sequential(corpus());
+        }
+        return corpusCounts;
+    }
+
+    static Options options(int threads, boolean mapped, boolean offHeap) {
+        final Options options = new Options();
+        options.threads = threads;
+        options.mapped = mapped;
+        options.offHeap = offHeap;
+        return options;
+    }
+
+    static FrequencyAnalyzer sequential(String text) {
+        final InputStream inputStream = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        return new FrequencyAnalyzer(inputStream);
+    }
+
+    static FrequencyAnalyzer sequential(String text, Options options) {
+        return new FrequencyAnalyzer(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), options);
+    }
+
+    static List<String> uniqueWords(int count) {
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add("слово" + i);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,126 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.sequential;
+import static ru.alspace.TestTexts.uniqueWords;
+
+/**
+ * Тесты упорядоченного вывода словаря: {@code --top} и {@code --sort}.
+ */
+public class WordRankingTest {
+    @Test
+    void testTopWords() {
+        final String text = "b b b a a c c d e e e e " + String.join(" ", uniqueWords(1000));
+        final Options options = new Options();
+        options.top = 3;
+        final FrequencyAnalyzer analyzer = sequential(text, options);
+
+        // По убыванию частоты, при равной частоте - по алфавиту
+        final List<String> words = new ArrayList<>();
+        analyzer.forEachWord((chars, length, count) -> words.add(new String(chars, 0, length) + "=" + count));
+        assertEquals(List.of("e=4", "b=3", "a=2"), words);
+    }
+
+    @Test
+    void testSortAlphabet() {
+        final String text = generateText(64 * 1024, 7);
+        final Options options = new Options();
+        options.sort = Options.Sort.ALPHABET;
+        final FrequencyAnalyzer analyzer = sequential(text, options);
+
+        final List<String> words = new ArrayList<>();
+        analyzer.forEachWord((chars, length, count) -> {
+            words.add(new String(chars, 0, length));
+            assertEquals(analyzer.getFrequency().get(words.getLast()), count);
+        });
+        final List<String> sorted = new ArrayList<>(analyzer.getFrequency().keySet());
+        Collections.sort(sorted);
+        assertEquals(sorted, words);
+    }
+
+    /**
+     * Таблица со словами из {@link TestTexts#uniqueWords} и случайными счётчиками.
+     */
+    private static FrequencyTable fill(FrequencyTable table, int size) {
+        final Random random = new Random(11);
+        for (String word : uniqueWords(size)) {
+            final char[] chars = word.toCharArray();
+            table.add(chars, chars.length, FrequencyTable.hash(chars, chars.length), 1 + random.nextInt(100));
+        }
+        return table;
+    }
+
+    private static List<String> ranking(FrequencyTable table, Options.Sort sort) {
+        final List<String> words = new ArrayList<>();
+        WordRanking.forEach(table, 0, sort, false,
+                (chars, length, count) -> words.add(new String(chars, 0, length) + "=" + count));
+        return words;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Options.Sort.class, names = {"ALPHABET", "FREQUENCY"})
+    void testSortOutsideHeap(Options.Sort sort) {
+        // Таблица с ограниченной памятью и таблица вне кучи сортируются без копии словаря в куче,
+        // но в том же порядке, что и обычная таблица
+        final List<String> expected = ranking(fill(new WordCountTable(), 50_000), sort);
+        final List<Supplier<FrequencyTable>> tables = List.of(
+                () -> new SpillingFrequencyTable(WordCountTable::new, 256 * 1024),
+                () -> new SpillingFrequencyTable(OffHeapWordTable::new, 256 * 1024),
+                OffHeapWordTable::new);
+        for (Supplier<FrequencyTable> table : tables) {
+            assertEquals(expected, ranking(fill(table.get(), 50_000), sort));
+        }
+    }
+
+    @Test
+    void testExternalSortManyRuns() {
+        // Маленький предел порции: серий больше, чем сливается за один проход
+        final FrequencyTable table = fill(new WordCountTable(), 50_000);
+        final List<String> expected = ranking(table, Options.Sort.FREQUENCY);
+        final List<String> words = new ArrayList<>();
+        ExternalSort.forEach(table, WordRanking.BY_FREQUENCY, 32 * 1024, true,
+                (chars, length, count) -> words.add(new String(chars, 0, length) + "=" + count));
+        assertEquals(expected, words);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 5})
+    void testRankingFromStream(int top) {
+        // Поток записей ранжируется так же, как таблица с теми же словами, но без её построения
+        final FrequencyTable table = fill(new WordCountTable(), 50_000);
+        final List<String> expected = new ArrayList<>();
+        WordRanking.forEach(table, top, Options.Sort.FREQUENCY, false,
+                (chars, length, count) -> expected.add(new String(chars, 0, length) + "=" + count));
+        final List<String> words = new ArrayList<>();
+        WordRanking.forEach(table::forEachSorted, top, Options.Sort.FREQUENCY, 32 * 1024, false,
+                (chars, length, count) -> words.add(new String(chars, 0, length) + "=" + count));
+        assertEquals(expected, words);
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {32 * 1024, 64 * 1024 * 1024})
+    void testExternalSortPassesConsumerExceptions(long memoryLimit) {
+        // Ошибка записи результата доходит до вызывающего кода как есть, и со слиянием серий, и без него
+        final FrequencyTable table = fill(new WordCountTable(), 10_000);
+        final IOException failure = new IOException("Диск заполнен");
+        final IOException thrown = assertThrows(IOException.class, () ->
+                ExternalSort.forEach(table, WordRanking.BY_ALPHABET, memoryLimit, false, (chars, length, count) -> {
+                    throw failure;
+                }));
+        assertEquals(failure, thrown);
+    }
+}
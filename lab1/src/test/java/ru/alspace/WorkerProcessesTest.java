@@ -0,0 +1,70 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.alspace.TestTexts.generateText;
+import static ru.alspace.TestTexts.options;
+import static ru.alspace.TestTexts.sequential;
+
+/**
+ * Тесты подсчёта в рабочих процессах.
+ */
+public class WorkerProcessesTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWorkerProcessesMatchSequential() throws IOException {
+        final StringBuilder all = new StringBuilder();
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final String text = generateText((i + 1) * 512 * 1024, 30 + i);
+            files.add(Files.writeString(tempDir.resolve("part" + i + ".txt"), text, StandardCharsets.UTF_8));
+            all.append(text).append('\n');
+        }
+
+        final List<List<FrequencyAnalyzer.FileRange>> groups = WorkerProcesses.split(files, 4);
+        assertEquals(4, groups.size());
+        long covered = 0;
+        for (List<FrequencyAnalyzer.FileRange> group : groups) {
+            for (FrequencyAnalyzer.FileRange range : group) {
+                covered += range.size();
+            }
+        }
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        assertEquals(total, covered);
+
+        final Options options = options(0, false, false);
+        options.workers = 4;
+        final FrequencyAnalyzer expected = sequential(all.toString());
+        final Map<String, Long> actual = new HashMap<>();
+        final List<String> order = new ArrayList<>();
+        try (WorkerProcesses workers = WorkerProcesses.run(files, options)) {
+            assertEquals(expected.getWordsCount(), workers.getTotalCount());
+            workers.merge((chars, length, count) -> {
+                final String word = new String(chars, 0, length);
+                actual.put(word, count);
+                order.add(word);
+            });
+        }
+        assertEquals(expected.getFrequency(), actual);
+        final List<String> sorted = new ArrayList<>(order);
+        Collections.sort(sorted);
+        assertEquals(sorted, order);
+    }
+}
@@ -1,11 +1,8 @@
 package ru.alspace;
 
-import java.util.Map;
-import java.util.Stack;
-
 /**
  * Контекст исполнения команд: хранит стек чисел и
- * карту названий (DEFINE) -> числовые значения.
+ * таблицу переменных (DEFINE) -> числовые значения.
  */
-public record Context(Stack<Double> stack, Map<String, Double> defines) {
+public record Context(DoubleStack stack, Variables defines) {
 }
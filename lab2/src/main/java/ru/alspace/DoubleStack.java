@@ -0,0 +1,84 @@
+package ru.alspace;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Стек чисел на растущем массиве {@code double[]}.
+ * В отличие от {@code Stack<Double>} не синхронизирован и не упаковывает числа в объекты.
+ */
+public class DoubleStack {
+    private double[] values;
+    private int size;
+
+    public DoubleStack() {
+        this(16);
+    }
+
+    /**
+     * @param capacity начальная вместимость
+     */
+    public DoubleStack(int capacity) {
+        values = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Кладёт число на вершину стека.
+     */
+    public void push(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Снимает число с вершины стека.
+     *
+     * @throws EmptyStackException если стек пуст
+     */
+    public double pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return values[--size];
+    }
+
+    /**
+     * Возвращает число на вершине стека, не снимая его.
+     *
+     * @throws EmptyStackException если стек пуст
+     */
+    public double peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return values[size - 1];
+    }
+
+    /**
+     * Удаляет все числа из стека.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Заменяет содержимое стека первыми {@code count} числами массива; последнее оказывается на вершине.
+     */
+    public void replace(double[] replacement, int count) {
+        if (count > values.length) {
+            values = new double[count];
+        }
+        System.arraycopy(replacement, 0, values, 0, count);
+        size = count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,587 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.alspace.commands.AddCommand;
+import ru.alspace.commands.DivCommand;
+import ru.alspace.commands.MulCommand;
+import ru.alspace.commands.PopCommand;
+import ru.alspace.commands.PrintCommand;
+import ru.alspace.commands.SqrtCommand;
+import ru.alspace.commands.SubCommand;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скрипт, скомпилированный в байт-код скрытого класса ({@link MethodHandles.Lookup#defineHiddenClass}).
+ * <p>
+ * Стек скрипта по возможности живёт в локальных переменных сгенерированного метода: PUSH кладёт число
+ * в локальную переменную, а +, -, *, /, SQRT считают над локальными переменными, поэтому JVM компилирует
+ * арифметику целиком, без обращений к {@link DoubleStack}. Глубина стека известна при компиляции;
+ * локальные переменные лежат поверх содержимого {@link DoubleStack} и переносятся в него
+ * в конце блока, перед операциями, которые исполняются интерпретатором, и при превышении {@link #MAX_DEPTH}.
+ * <p>
+ * Всё, что может завершиться ошибкой или предупреждением (деление на ноль, корень из отрицательного числа,
+ * результат не конечен, неопределённая переменная), проверяется в сгенерированном коде, но обрабатывается
+ * интерпретатором: локальные переменные переносятся в стек, и {@link Program} продолжает исполнение
+ * с этой операции до конца скрипта. Поэтому сообщения и состояние стека такие же, как у команд.
+ * Операции, которых генератор не знает (REPLACE, пользовательские команды, ошибки компиляции строк,
+ * команды с нехваткой чисел в локальных переменных), исполняются интерпретатором по одной.
+ * <p>
+ * В JDK 21 class-file API ещё не доступен, поэтому класс записывается здесь же, в минимальном формате
+ * версии 49: для неё не нужны карты кадров стека (StackMapTable), и байт-код проверяется выводом типов.
+ */
+public final class JitProgram {
+    private static final Logger logger = LogManager.getLogger(JitProgram.class);
+
+    // Наибольшая глубина стека в локальных переменных; глубже числа переносятся в DoubleStack
+    static final int MAX_DEPTH = 32;
+    // Скрипты длиннее не компилируются: пул констант класса ограничен 65535 элементами
+    static final int MAX_INSTRUCTIONS = 16384;
+    // Размер кода, после которого начинается следующий метод (предел метода - 65535 байт)
+    private static final int MAX_BLOCK_CODE = 16384;
+
+    private static final String CLASS_NAME = "ru/alspace/JitScript";
+    private static final String PROGRAM = "ru/alspace/Program";
+    private static final String CONTEXT = "ru/alspace/Context";
+    private static final String STACK = "ru/alspace/DoubleStack";
+    private static final String VARIABLES = "ru/alspace/Variables";
+    private static final String ARGUMENTS = "(L" + PROGRAM + ";L" + CONTEXT + ";L" + STACK + ";L" + VARIABLES + ";)";
+    private static final MethodType RUN_TYPE = MethodType.methodType(
+            void.class, Program.class, Context.class, DoubleStack.class, Variables.class);
+
+    // Локальные переменные сгенерированных методов: аргументы, числа стека (по 2 ячейки) и временная ячейка
+    private static final int LOCAL_PROGRAM = 0;
+    private static final int LOCAL_CONTEXT = 1;
+    private static final int LOCAL_STACK = 2;
+    private static final int LOCAL_VARIABLES = 3;
+    private static final int LOCAL_FIRST_VALUE = 4;
+    private static final int LOCAL_TEMP = LOCAL_FIRST_VALUE + 2 * MAX_DEPTH;
+
+    private final Program program;
+    // null, если скрипт исполняется интерпретатором
+    private final MethodHandle code;
+
+    private JitProgram(Program program, MethodHandle code) {
+        this.program = program;
+        this.code = code;
+    }
+
+    /**
+     * Компилирует скрипт в байт-код. Если скрипт слишком большой, он исполняется интерпретатором.
+     *
+     * @param program скомпилированный скрипт
+     * @return исполняемый скрипт
+     */
+    public static JitProgram compile(Program program) {
+        if (program.size() > MAX_INSTRUCTIONS) {
+            logger.info("Скрипт из {} операций исполняется интерпретатором: предел JIT - {}",
+                    program.size(), MAX_INSTRUCTIONS);
+            return new JitProgram(program, null);
+        }
+        byte[] bytes = new Generator(program).generate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle code = lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+            logger.info("Скрипт из {} операций скомпилирован в байт-код ({} байт)", program.size(), bytes.length);
+            return new JitProgram(program, code);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Не удалось загрузить сгенерированный класс", e);
+        }
+    }
+
+    /**
+     * Исполняет скрипт с той же семантикой, что и {@link Program#run}.
+     */
+    public void run(Context context) {
+        program.checkContext(context);
+        if (code == null) {
+            program.resume(0, context);
+            return;
+        }
+        try {
+            code.invokeExact(program, context, context.stack(), context.defines());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Исполняется ли скрипт сгенерированным байт-кодом.
+     */
+    public boolean isCompiled() {
+        return code != null;
+    }
+
+    /**
+     * Генератор класса: статический метод {@code run} по очереди вызывает методы блоков;
+     * блок возвращает {@code true}, если остаток скрипта исполнил интерпретатор.
+     */
+    private static class Generator {
+        private final Program program;
+        private final ConstantPool pool = new ConstantPool();
+        private final List<byte[]> blocks = new ArrayList<>();
+        private Code code;
+        // Глубина стека в локальных переменных
+        private int depth;
+
+        Generator(Program program) {
+            this.program = program;
+        }
+
+        byte[] generate() {
+            int pc = 0;
+            do {
+                code = new Code();
+                depth = 0;
+                while (pc < program.size() && code.size() < MAX_BLOCK_CODE) {
+                    instruction(pc++);
+                }
+                flush();
+                code.u1(Opcodes.ICONST_0);
+                code.u1(Opcodes.IRETURN);
+                blocks.add(code.toByteArray());
+            } while (pc < program.size());
+
+            code = new Code();
+            for (int i = 0; i < blocks.size(); i++) {
+                loadArguments();
+                code.u1(Opcodes.INVOKESTATIC);
+                code.u2(pool.methodRef(CLASS_NAME, "block" + i, ARGUMENTS + "Z"));
+                int jump = code.size();
+                code.u1(Opcodes.IFEQ);
+                code.u2(0);
+                code.u1(Opcodes.RETURN);
+                code.patch(jump);
+            }
+            code.u1(Opcodes.RETURN);
+            return writeClass(code.toByteArray());
+        }
+
+        private void instruction(int pc) {
+            int operand = program.operand(pc);
+            switch (program.opcode(pc)) {
+                case Program.PUSH_NUMBER -> {
+                    reserve();
+                    code.u1(Opcodes.LDC2_W);
+                    code.u2(pool.doubleConstant(program.number(operand)));
+                    store(depth++);
+                }
+                case Program.PUSH_VARIABLE -> {
+                    reserve();
+                    code.u1(Opcodes.ALOAD_0 + LOCAL_VARIABLES);
+                    pushInt(operand);
+                    code.u1(Opcodes.INVOKEVIRTUAL);
+                    code.u2(pool.methodRef(VARIABLES, "isDefined", "(I)Z"));
+                    deoptimizeUnless(Opcodes.IFNE, pc);
+                    code.u1(Opcodes.ALOAD_0 + LOCAL_VARIABLES);
+                    pushInt(operand);
+                    code.u1(Opcodes.INVOKEVIRTUAL);
+                    code.u2(pool.methodRef(VARIABLES, "get", "(I)D"));
+                    store(depth++);
+                }
+                case Program.POP_VARIABLE -> {
+                    if (depth < 1) {
+                        interpret(pc);
+                        return;
+                    }
+                    code.u1(Opcodes.ALOAD_0 + LOCAL_VARIABLES);
+                    pushInt(operand);
+                    load(--depth);
+                    code.u1(Opcodes.INVOKEVIRTUAL);
+                    code.u2(pool.methodRef(VARIABLES, "set", "(ID)V"));
+                }
+                case Program.DEFINE_NUMBER -> {
+                    Program.Definition definition = program.definition(operand);
+                    code.u1(Opcodes.ALOAD_0 + LOCAL_VARIABLES);
+                    pushInt(definition.slot());
+                    code.u1(Opcodes.LDC2_W);
+                    code.u2(pool.doubleConstant(definition.value()));
+                    code.u1(Opcodes.INVOKEVIRTUAL);
+                    code.u2(pool.methodRef(VARIABLES, "set", "(ID)V"));
+                }
+                case Program.EXECUTE -> command(pc, program.call(operand));
+                default -> interpret(pc);
+            }
+        }
+
+        /**
+         * Стандартные команды без аргументов над числами в локальных переменных.
+         */
+        private void command(int pc, Program.Call call) {
+            Class<?> type = call.command().getClass();
+            int operands = type == SqrtCommand.class || type == PopCommand.class || type == PrintCommand.class ? 1 : 2;
+            boolean known = type == AddCommand.class || type == SubCommand.class || type == MulCommand.class
+                    || type == DivCommand.class || operands == 1;
+            if (!known || !call.arguments().isEmpty() || depth < operands) {
+                interpret(pc);
+                return;
+            }
+
+            if (type == PopCommand.class) {
+                depth--;
+            } else if (type == PrintCommand.class) {
+                code.u1(Opcodes.GETSTATIC);
+                code.u2(pool.fieldRef("java/lang/System", "out", "Ljava/io/PrintStream;"));
+                load(depth - 1);
+                code.u1(Opcodes.INVOKEVIRTUAL);
+                code.u2(pool.methodRef("java/io/PrintStream", "println", "(D)V"));
+            } else if (type == SqrtCommand.class) {
+                // Корень из отрицательного числа: value < 0 (NaN сюда не попадает)
+                load(depth - 1);
+                code.u1(Opcodes.DCONST_0);
+                code.u1(Opcodes.DCMPG);
+                deoptimizeUnless(Opcodes.IFGE, pc);
+                load(depth - 1);
+                code.u1(Opcodes.INVOKESTATIC);
+                code.u2(pool.methodRef("java/lang/Math", "sqrt", "(D)D"));
+                storeChecked(pc, depth - 1);
+            } else {
+                if (type == DivCommand.class) {
+                    // Деление на ноль: b == 0 (в том числе -0.0)
+                    load(depth - 1);
+                    code.u1(Opcodes.DCONST_0);
+                    code.u1(Opcodes.DCMPL);
+                    deoptimizeUnless(Opcodes.IFNE, pc);
+                }
+                load(depth - 2);
+                load(depth - 1);
+                code.u1(type == AddCommand.class ? Opcodes.DADD
+                        : type == SubCommand.class ? Opcodes.DSUB
+                        : type == MulCommand.class ? Opcodes.DMUL
+                        : Opcodes.DDIV);
+                storeChecked(pc, depth - 2);
+                depth--;
+            }
+        }
+
+        /**
+         * Сохраняет результат с вершины стека операндов в число {@code index}; если результат не конечен,
+         * операцию повторяет интерпретатор, чтобы вывести предупреждение команды.
+         */
+        private void storeChecked(int pc, int index) {
+            code.u1(Opcodes.DSTORE);
+            code.u1(LOCAL_TEMP);
+            code.u1(Opcodes.DLOAD);
+            code.u1(LOCAL_TEMP);
+            code.u1(Opcodes.INVOKESTATIC);
+            code.u2(pool.methodRef("java/lang/Double", "isFinite", "(D)Z"));
+            deoptimizeUnless(Opcodes.IFNE, pc);
+            code.u1(Opcodes.DLOAD);
+            code.u1(LOCAL_TEMP);
+            store(index);
+        }
+
+        /**
+         * Если условие {@code branch} ложно, переносит числа в стек и передаёт интерпретатору остаток скрипта
+         * начиная с операции {@code pc}.
+         */
+        private void deoptimizeUnless(int branch, int pc) {
+            int jump = code.size();
+            code.u1(branch);
+            code.u2(0);
+            flushLocals();
+            code.u1(Opcodes.ALOAD_0 + LOCAL_PROGRAM);
+            pushInt(pc);
+            code.u1(Opcodes.ALOAD_0 + LOCAL_CONTEXT);
+            code.u1(Opcodes.INVOKEVIRTUAL);
+            code.u2(pool.methodRef(PROGRAM, "resume", "(IL" + CONTEXT + ";)V"));
+            code.u1(Opcodes.ICONST_1);
+            code.u1(Opcodes.IRETURN);
+            code.patch(jump);
+        }
+
+        /**
+         * Исполняет одну операцию интерпретатором; после неё стек целиком в DoubleStack.
+         */
+        private void interpret(int pc) {
+            flush();
+            code.u1(Opcodes.ALOAD_0 + LOCAL_PROGRAM);
+            pushInt(pc);
+            code.u1(Opcodes.ALOAD_0 + LOCAL_CONTEXT);
+            code.u1(Opcodes.INVOKEVIRTUAL);
+            code.u2(pool.methodRef(PROGRAM, "step", "(IL" + CONTEXT + ";)V"));
+        }
+
+        /**
+         * Освобождает место под ещё одно число в локальных переменных.
+         */
+        private void reserve() {
+            if (depth == MAX_DEPTH) {
+                flush();
+            }
+        }
+
+        /**
+         * Переносит числа из локальных переменных в DoubleStack.
+         */
+        private void flush() {
+            flushLocals();
+            depth = 0;
+        }
+
+        private void flushLocals() {
+            for (int i = 0; i < depth; i++) {
+                code.u1(Opcodes.ALOAD_0 + LOCAL_STACK);
+                load(i);
+                code.u1(Opcodes.INVOKEVIRTUAL);
+                code.u2(pool.methodRef(STACK, "push", "(D)V"));
+            }
+        }
+
+        private void load(int index) {
+            code.u1(Opcodes.DLOAD);
+            code.u1(LOCAL_FIRST_VALUE + 2 * index);
+        }
+
+        private void store(int index) {
+            code.u1(Opcodes.DSTORE);
+            code.u1(LOCAL_FIRST_VALUE + 2 * index);
+        }
+
+        private void loadArguments() {
+            code.u1(Opcodes.ALOAD_0 + LOCAL_PROGRAM);
+            code.u1(Opcodes.ALOAD_0 + LOCAL_CONTEXT);
+            code.u1(Opcodes.ALOAD_0 + LOCAL_STACK);
+            code.u1(Opcodes.ALOAD_0 + LOCAL_VARIABLES);
+        }
+
+        private void pushInt(int value) {
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.u1(Opcodes.SIPUSH);
+                code.u2(value);
+            } else {
+                code.u1(Opcodes.LDC_W);
+                code.u2(pool.intConstant(value));
+            }
+        }
+
+        /**
+         * Записывает класс: без полей и конструктора, методы {@code run} и {@code block0..N}.
+         */
+        private byte[] writeClass(byte[] runCode) {
+            int thisClass = pool.classRef(CLASS_NAME);
+            int superClass = pool.classRef("java/lang/Object");
+            int codeName = pool.utf8("Code");
+            List<int[]> methods = new ArrayList<>();
+            methods.add(new int[]{0x0009, pool.utf8("run"), pool.utf8(ARGUMENTS + "V")});
+            for (int i = 0; i < blocks.size(); i++) {
+                methods.add(new int[]{0x000A, pool.utf8("block" + i), pool.utf8(ARGUMENTS + "Z")});
+            }
+            if (pool.size() > 0xFFFF) {
+                throw new IllegalStateException("Пул констант сгенерированного класса переполнен");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(49);
+                pool.write(out);
+                out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0); // интерфейсы
+                out.writeShort(0); // поля
+                out.writeShort(methods.size());
+                for (int i = 0; i < methods.size(); i++) {
+                    int[] method = methods.get(i);
+                    byte[] body = i == 0 ? runCode : blocks.get(i - 1);
+                    out.writeShort(method[0]);
+                    out.writeShort(method[1]);
+                    out.writeShort(method[2]);
+                    out.writeShort(1);
+                    out.writeShort(codeName);
+                    out.writeInt(12 + body.length);
+                    out.writeShort(6); // max_stack: не больше двух double и двух ссылок
+                    out.writeShort(LOCAL_TEMP + 2);
+                    out.writeInt(body.length);
+                    out.write(body);
+                    out.writeShort(0); // таблица исключений
+                    out.writeShort(0); // атрибуты кода
+                }
+                out.writeShort(0); // атрибуты класса
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Коды инструкций JVM, которые использует генератор.
+     */
+    private static final class Opcodes {
+        static final int ICONST_0 = 0x03;
+        static final int ICONST_1 = 0x04;
+        static final int DCONST_0 = 0x0E;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int DLOAD = 0x18;
+        static final int ALOAD_0 = 0x2A;
+        static final int DSTORE = 0x39;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6B;
+        static final int DDIV = 0x6F;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9A;
+        static final int IFGE = 0x9C;
+        static final int IRETURN = 0xAC;
+        static final int RETURN = 0xB1;
+        static final int GETSTATIC = 0xB2;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESTATIC = 0xB8;
+    }
+
+    /**
+     * Код метода с заполнением смещений переходов.
+     */
+    private static final class Code {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void u1(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        /**
+         * Направляет переход, записанный в позиции {@code jump}, на текущую позицию.
+         */
+        void patch(int jump) {
+            int offset = size - jump;
+            bytes[jump + 1] = (byte) (offset >> 8);
+            bytes[jump + 2] = (byte) offset;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Пул констант класса; одинаковые константы записываются один раз.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indices = new HashMap<>();
+        // Номер следующей константы; double занимает два номера
+        private int next = 1;
+
+        int utf8(String value) {
+            return add("U" + value, 1, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return add("C" + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            int classIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = add("N" + name + ":" + descriptor, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return add(tag + owner + "." + name + ":" + descriptor, 1, () -> {
+                out.writeByte(tag);
+                out.writeShort(classIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return add("D" + bits, 2, () -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            });
+        }
+
+        int intConstant(int value) {
+            return add("I" + value, 1, () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        /**
+         * Количество номеров констант с учётом пропуска после double, как в заголовке пула.
+         */
+        int size() {
+            return next;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(next);
+            out.flush();
+            bytes.writeTo(target);
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+
+        private int add(String key, int slots, Writer writer) {
+            Integer index = indices.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int result = next;
+            next += slots;
+            indices.put(key, result);
+            return result;
+        }
+    }
+}
@@ -6,12 +6,17 @@ import org.apache.logging.log4j.Logger;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.InputStreamReader;
-import java.util.*;
+import java.util.Arrays;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
     public static void main(String[] args) {
+        // --jit: скрипт из файла исполняется сгенерированным байт-кодом
+        boolean jit = args.length > 0 && args[0].equals("--jit");
+        if (jit) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         // Проверяем число аргументов
         if (args.length > 2) {
             System.err.println("Слишком много аргументов!");
@@ -19,6 +24,7 @@ public class Main {
             System.err.println("    java -jar MyCalc.jar                (читать команды из stdin, стандартный конфиг)");
             System.err.println("    java -jar MyCalc.jar <scriptFile>   (читать команды из scriptFile, стандартный конфиг)");
             System.err.println("    java -jar MyCalc.jar <scriptFile> <configFile> (читать команды из scriptFile, конфиг из configFile)");
+            System.err.println("    java -jar MyCalc.jar --jit <scriptFile> [configFile] (скрипт исполняется байт-кодом)");
             System.exit(1);
         }
 
@@ -46,41 +52,23 @@ public class Main {
                 factory = new CommandFactory(); // загрузит default
             }
             // Инициализируем контекст (стек + defines)
-            Context context = new Context(new Stack<>(), new HashMap<>());
-
-            // Читаем файл/поток построчно
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Удалим пробелы, проверим пустую строку или комментарий
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) {
-                    continue;
-                }
+            Context context = new Context(new DoubleStack(), new Variables());
 
-                // Разбиваем на токены
-                String[] tokens = line.split("\\s+");
-                String cmdName = tokens[0]; // Имя команды
-                List<String> cmdArgs = new ArrayList<>();
-                if (tokens.length > 1) {
-                    // Аргументы — всё, что после 0-го
-                    cmdArgs = Arrays.asList(Arrays.copyOfRange(tokens, 1, tokens.length));
+            if (args.length > 0) {
+                // Скрипт из файла компилируется целиком и затем исполняется
+                Program program = Program.compile(reader, factory, context.defines());
+                logger.info("Скрипт скомпилирован. Количество операций: {}", program.size());
+                if (jit) {
+                    JitProgram.compile(program).run(context);
+                } else {
+                    program.run(context);
                 }
-
-                try {
-                    // Создаём команду через фабрику
-                    Command command = factory.getCommand(cmdName.toUpperCase());
-                    // Вызываем execute
-                    command.execute(context, cmdArgs);
-                } catch (CommandExecutionException e) {
-                    // Ошибка исполнения самой команды (например, недостаточно элементов в стеке)
-                    logger.error("Ошибка при выполнении команды '{}': {}", cmdName, e.getMessage());
-                    System.err.println("Ошибка исполнения команды '" + cmdName + "': " + e.getMessage());
-                    // Продолжаем цикл (не прерываем программу)
-                } catch (RuntimeException e) {
-                    // Ошибка фабрики, не найдена команда, ошибка загрузки класса и т.д.
-                    logger.error("Ошибка фабрики или системная: {}", e.getMessage(), e);
-                    System.err.println("Невозможно выполнить команду '" + cmdName + "': " + e.getMessage());
-                    // Тоже не прерываем
+            } else {
+                // Ввод с консоли исполняется построчно, по мере ввода
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    Program.compileLine(line, ++lineNumber, factory, context.defines()).run(context);
                 }
             }
 
@@ -0,0 +1,137 @@
+package ru.alspace;
+
+/**
+ * Проверка, является ли токен числом в формате {@link Double#parseDouble}, без исключений.
+ * <p>
+ * Команды, которые принимают число или имя переменной, сначала проверяют токен здесь и вызывают
+ * {@link Double#parseDouble} только для чисел. Иначе каждое имя переменной стоило бы создания
+ * {@link NumberFormatException} со стеком вызовов.
+ * <p>
+ * Принимается та же грамматика, что и в {@link Double#valueOf(String)}: знак, NaN, Infinity,
+ * десятичная запись с порядком, шестнадцатеричная запись с двоичным порядком и суффиксы f, F, d, D;
+ * пробельные символы по краям отбрасываются.
+ */
+public final class NumberScanner {
+    private NumberScanner() {
+    }
+
+    /**
+     * @param token проверяемая строка
+     * @return {@code true}, если {@link Double#parseDouble} разберёт строку без исключения
+     */
+    public static boolean isNumber(String token) {
+        int end = token.length();
+        int i = 0;
+        // Как и String.trim() внутри parseDouble
+        while (i < end && token.charAt(i) <= ' ') {
+            i++;
+        }
+        while (end > i && token.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (i < end && (token.charAt(i) == '+' || token.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+
+        char first = token.charAt(i);
+        if (first == 'N') {
+            return token.startsWith("NaN", i) && i + 3 == end;
+        }
+        if (first == 'I') {
+            return token.startsWith("Infinity", i) && i + 8 == end;
+        }
+        if (first == '0' && i + 1 < end && (token.charAt(i + 1) == 'x' || token.charAt(i + 1) == 'X')) {
+            return isHex(token, i + 2, end);
+        }
+        return isDecimal(token, i, end);
+    }
+
+    /**
+     * Десятичная запись: цифры с необязательной точкой (хотя бы одна цифра), порядок и суффикс.
+     */
+    private static boolean isDecimal(String token, int i, int end) {
+        int digits = 0;
+        while (i < end && isDigit(token.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && token.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(token.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (token.charAt(i) == 'e' || token.charAt(i) == 'E')) {
+            i = skipExponent(token, i + 1, end);
+            if (i < 0) {
+                return false;
+            }
+        }
+        return isSuffix(token, i, end);
+    }
+
+    /**
+     * Шестнадцатеричная запись после 0x: цифры с необязательной точкой, обязательный порядок p и суффикс.
+     */
+    private static boolean isHex(String token, int i, int end) {
+        int digits = 0;
+        while (i < end && isHexDigit(token.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && token.charAt(i) == '.') {
+            i++;
+            while (i < end && isHexDigit(token.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0 || i == end || (token.charAt(i) != 'p' && token.charAt(i) != 'P')) {
+            return false;
+        }
+        i = skipExponent(token, i + 1, end);
+        return i >= 0 && isSuffix(token, i, end);
+    }
+
+    /**
+     * Пропускает порядок после буквы e или p: необязательный знак и хотя бы одна цифра.
+     *
+     * @return позиция после порядка или -1, если порядок записан неверно
+     */
+    private static int skipExponent(String token, int i, int end) {
+        if (i < end && (token.charAt(i) == '+' || token.charAt(i) == '-')) {
+            i++;
+        }
+        int start = i;
+        while (i < end && isDigit(token.charAt(i))) {
+            i++;
+        }
+        return i > start ? i : -1;
+    }
+
+    /**
+     * Конец строки или один суффикс типа f, F, d, D в конце.
+     */
+    private static boolean isSuffix(String token, int i, int end) {
+        if (i == end) {
+            return true;
+        }
+        char c = token.charAt(i);
+        return i + 1 == end && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,483 @@
+package ru.alspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.alspace.commands.AddCommand;
+import ru.alspace.commands.DefineCommand;
+import ru.alspace.commands.DivCommand;
+import ru.alspace.commands.MulCommand;
+import ru.alspace.commands.PopCommand;
+import ru.alspace.commands.PrintCommand;
+import ru.alspace.commands.PushCommand;
+import ru.alspace.commands.ReplaceCommand;
+import ru.alspace.commands.SqrtCommand;
+import ru.alspace.commands.SubCommand;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Скомпилированный скрипт калькулятора: массив кодов операций с заранее разобранными операндами.
+ * <p>
+ * Скрипт разбирается один раз: строки делятся на токены, команды находятся в фабрике, числа разбираются,
+ * а имена переменных заменяются номерами ячеек в {@link Variables}. Исполнение - цикл по массиву кодов
+ * без разбора строк. Строка, которую не удалось скомпилировать (например, с неизвестной командой),
+ * превращается в операцию {@link #ERROR}: ошибка выводится в тот момент исполнения, когда до неё доходит очередь.
+ * <p>
+ * Стандартные PUSH, POP, DEFINE и REPLACE исполняются прямо в цикле с теми же проверками и сообщениями,
+ * что и в классах команд; остальные команды вызываются через {@link Command#execute}.
+ */
+public class Program {
+    private static final Logger logger = LogManager.getLogger(Program.class);
+
+    // Положить в стек число, разобранное при компиляции; операнд - индекс в numbers
+    static final byte PUSH_NUMBER = 0;
+    // Выполнить команду с заранее разобранными аргументами; операнд - индекс в calls
+    static final byte EXECUTE = 1;
+    // Сообщить об ошибке компиляции строки; операнд - индекс в failures
+    static final byte ERROR = 2;
+    // Положить в стек значение переменной; операнд - номер ячейки
+    static final byte PUSH_VARIABLE = 3;
+    // Снять число со стека в переменную; операнд - номер ячейки
+    static final byte POP_VARIABLE = 4;
+    // Записать в переменную число; операнд - индекс в definitions
+    static final byte DEFINE_NUMBER = 5;
+    // Заменить содержимое стека; операнд - индекс в replacements
+    static final byte REPLACE = 6;
+
+    // Команды, которые не записывают переменные: с ними можно заранее найти имена, которые нигде не определяются
+    private static final Set<Class<?>> PURE_COMMANDS = Set.of(AddCommand.class, SubCommand.class, MulCommand.class,
+            DivCommand.class, SqrtCommand.class, PrintCommand.class, PushCommand.class, ReplaceCommand.class);
+
+    /**
+     * Вызов команды с аргументами.
+     */
+    record Call(Command command, List<String> arguments) {
+    }
+
+    /**
+     * DEFINE: номер ячейки и значение.
+     */
+    record Definition(int slot, double value) {
+    }
+
+    /**
+     * REPLACE: значения по порядку; для переменной в {@code slots} номер ячейки, для числа -1.
+     */
+    record Replacement(double[] values, int[] slots) {
+    }
+
+    private final byte[] opcodes;
+    private final int[] operands;
+    // Номер строки скрипта и индекс имени команды в names для каждой операции
+    private final int[] lines;
+    private final int[] nameIds;
+    private final String[] names;
+    private final double[] numbers;
+    private final Call[] calls;
+    private final String[] failures;
+    private final Definition[] definitions;
+    private final Replacement[] replacements;
+    private final Variables variables;
+    // Буфер для значений REPLACE
+    private double[] replaceBuffer = new double[0];
+
+    private Program(Compiler compiler) {
+        int size = compiler.size;
+        this.opcodes = Arrays.copyOf(compiler.opcodes, size);
+        this.operands = Arrays.copyOf(compiler.operands, size);
+        this.lines = Arrays.copyOf(compiler.lines, size);
+        this.nameIds = Arrays.copyOf(compiler.nameIds, size);
+        this.names = compiler.names.toArray(new String[0]);
+        this.numbers = Arrays.copyOf(compiler.numbers, compiler.numbersSize);
+        this.calls = compiler.calls.toArray(new Call[0]);
+        this.failures = compiler.failures.toArray(new String[0]);
+        this.definitions = compiler.definitions.toArray(new Definition[0]);
+        this.replacements = compiler.replacements.toArray(new Replacement[0]);
+        this.variables = compiler.variables;
+    }
+
+    /**
+     * Компилирует скрипт целиком.
+     *
+     * @param reader    источник строк скрипта
+     * @param factory   фабрика команд
+     * @param variables таблица переменных контекста, в котором скрипт будет исполняться
+     * @return скомпилированный скрипт
+     * @throws IOException если не удалось прочитать скрипт
+     */
+    public static Program compile(BufferedReader reader, CommandFactory factory, Variables variables)
+            throws IOException {
+        Compiler compiler = new Compiler(factory, variables);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            compiler.add(line, ++lineNumber);
+        }
+        return compiler.build();
+    }
+
+    /**
+     * Компилирует одну строку (для построчного исполнения ввода с консоли).
+     *
+     * @param line       строка скрипта
+     * @param lineNumber номер строки для сообщений об ошибках
+     * @param factory    фабрика команд
+     * @param variables  таблица переменных контекста
+     * @return скомпилированная строка
+     */
+    public static Program compileLine(String line, int lineNumber, CommandFactory factory, Variables variables) {
+        Compiler compiler = new Compiler(factory, variables);
+        compiler.add(line, lineNumber);
+        return compiler.build();
+    }
+
+    /**
+     * Количество операций.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Исполняет скрипт. Ошибка в строке выводится с номером строки и не прерывает исполнение.
+     *
+     * @param context контекст исполнения; его таблица переменных должна быть той, с которой скрипт компилировался
+     */
+    public void run(Context context) {
+        checkContext(context);
+        resume(0, context);
+    }
+
+    void checkContext(Context context) {
+        if (context.defines() != variables) {
+            throw new IllegalArgumentException("Скрипт скомпилирован для другой таблицы переменных");
+        }
+    }
+
+    /**
+     * Исполняет скрипт с операции {@code from} до конца.
+     */
+    void resume(int from, Context context) {
+        for (int pc = from; pc < opcodes.length; pc++) {
+            step(pc, context);
+        }
+    }
+
+    /**
+     * Исполняет одну операцию; ошибка выводится с номером строки.
+     */
+    void step(int pc, Context context) {
+        try {
+            execute(pc, context.stack(), context);
+        } catch (CommandExecutionException e) {
+            String name = names[nameIds[pc]];
+            logger.error("Ошибка при выполнении команды '{}' (строка {}): {}", name, lines[pc], e.getMessage());
+            System.err.println("Ошибка исполнения команды '" + name + "' (строка " + lines[pc] + "): "
+                    + e.getMessage());
+        } catch (RuntimeException e) {
+            // Ошибка внутри команды, не описанная CommandExecutionException
+            String name = names[nameIds[pc]];
+            logger.error("Системная ошибка в команде '{}' (строка {}): {}", name, lines[pc], e.getMessage(), e);
+            System.err.println("Невозможно выполнить команду '" + name + "' (строка " + lines[pc] + "): "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Исполняет одну операцию.
+     *
+     * @throws CommandExecutionException если команда завершилась с ошибкой или строка не скомпилирована
+     */
+    private void execute(int pc, DoubleStack stack, Context context) throws CommandExecutionException {
+        int operand = operands[pc];
+        switch (opcodes[pc]) {
+            case PUSH_NUMBER -> stack.push(numbers[operand]);
+            case PUSH_VARIABLE -> {
+                if (!variables.isDefined(operand)) {
+                    throw new CommandExecutionException(
+                            "PUSH: неизвестный параметр '" + variables.name(operand) + "'");
+                }
+                stack.push(variables.get(operand));
+            }
+            case POP_VARIABLE -> {
+                if (stack.isEmpty()) {
+                    throw new CommandExecutionException("POP: стек пуст");
+                }
+                variables.set(operand, stack.pop());
+            }
+            case DEFINE_NUMBER -> {
+                Definition definition = definitions[operand];
+                variables.set(definition.slot(), definition.value());
+            }
+            case REPLACE -> replace(replacements[operand], stack);
+            case EXECUTE -> {
+                Call call = calls[operand];
+                call.command().execute(context, call.arguments());
+            }
+            case ERROR -> throw new CommandExecutionException(failures[operand]);
+            default -> throw new IllegalStateException("Неизвестный код операции " + opcodes[pc]);
+        }
+    }
+
+    // Доступ к операциям для JitProgram
+
+    byte opcode(int pc) {
+        return opcodes[pc];
+    }
+
+    int operand(int pc) {
+        return operands[pc];
+    }
+
+    double number(int index) {
+        return numbers[index];
+    }
+
+    Call call(int index) {
+        return calls[index];
+    }
+
+    Definition definition(int index) {
+        return definitions[index];
+    }
+
+    private void replace(Replacement replacement, DoubleStack stack) throws CommandExecutionException {
+        double[] values = replacement.values();
+        int[] slots = replacement.slots();
+        if (replaceBuffer.length < values.length) {
+            replaceBuffer = new double[values.length];
+        }
+        for (int i = 0; i < values.length; i++) {
+            int slot = slots[i];
+            if (slot < 0) {
+                replaceBuffer[i] = values[i];
+            } else if (variables.isDefined(slot)) {
+                replaceBuffer[i] = variables.get(slot);
+            } else {
+                // Стек остаётся без изменений
+                throw new CommandExecutionException("REPLACE: переменная '" + variables.name(slot) + "' не определена");
+            }
+        }
+        stack.replace(replaceBuffer, values.length);
+    }
+
+    /**
+     * Накапливает операции по строкам скрипта.
+     */
+    private static class Compiler {
+        private final CommandFactory factory;
+        private final Variables variables;
+        // Команды по имени, как оно записано в скрипте, чтобы не приводить его к верхнему регистру на каждой строке
+        private final Map<String, Command> resolved = new HashMap<>();
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+        private final List<String> tokens = new ArrayList<>();
+
+        private byte[] opcodes = new byte[64];
+        private int[] operands = new int[64];
+        private int[] lines = new int[64];
+        private int[] nameIds = new int[64];
+        private int size = 0;
+        private double[] numbers = new double[16];
+        private int numbersSize = 0;
+        private final List<String> names = new ArrayList<>();
+        private final List<Call> calls = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        private final List<Definition> definitions = new ArrayList<>();
+        private final List<Replacement> replacements = new ArrayList<>();
+        // Записывает ли скрипт переменную в ячейку; если есть команды, которые могут записать любую
+        // переменную, заранее ничего не проверяется
+        private boolean[] written = new boolean[16];
+        private boolean writesAnyVariable = false;
+
+        Compiler(CommandFactory factory, Variables variables) {
+            this.factory = factory;
+            this.variables = variables;
+        }
+
+        void add(String line, int lineNumber) {
+            // Пустые строки и комментарии не компилируются
+            tokenize(line);
+            if (tokens.isEmpty() || tokens.getFirst().startsWith("#")) {
+                return;
+            }
+
+            String name = tokens.getFirst();
+            int nameId = nameIndex.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+            Command command;
+            try {
+                command = resolved.get(name);
+                if (command == null) {
+                    command = factory.getCommand(name.toUpperCase());
+                    resolved.put(name, command);
+                }
+            } catch (RuntimeException e) {
+                failures.add(e.getMessage());
+                emit(ERROR, failures.size() - 1, lineNumber, nameId);
+                return;
+            }
+
+            List<String> arguments = tokens.size() > 1 ? List.copyOf(tokens.subList(1, tokens.size())) : List.of();
+            if (!compileStandard(command, arguments, lineNumber, nameId)) {
+                writesAnyVariable |= !PURE_COMMANDS.contains(command.getClass());
+                calls.add(new Call(command, arguments));
+                emit(EXECUTE, calls.size() - 1, lineNumber, nameId);
+            }
+        }
+
+        /**
+         * Компилирует стандартные PUSH, POP, DEFINE и REPLACE с корректными аргументами в отдельные операции.
+         * Остальные строки, в том числе с ошибками в аргументах, исполняются через класс команды.
+         *
+         * @return {@code true}, если строка скомпилирована
+         */
+        private boolean compileStandard(Command command, List<String> arguments, int lineNumber, int nameId) {
+            Class<?> type = command.getClass();
+            if (type == PushCommand.class && arguments.size() == 1) {
+                String token = arguments.getFirst();
+                Double value = parseNumber(token);
+                if (value != null) {
+                    if (numbersSize == numbers.length) {
+                        numbers = Arrays.copyOf(numbers, numbersSize * 2);
+                    }
+                    numbers[numbersSize++] = value;
+                    emit(PUSH_NUMBER, numbersSize - 1, lineNumber, nameId);
+                } else {
+                    emit(PUSH_VARIABLE, variables.slot(token), lineNumber, nameId);
+                }
+                return true;
+            }
+            if (type == PopCommand.class && arguments.size() == 1) {
+                emit(POP_VARIABLE, write(arguments.getFirst()), lineNumber, nameId);
+                return true;
+            }
+            if (type == DefineCommand.class && arguments.size() == 2
+                    && Character.isAlphabetic(arguments.getFirst().charAt(0))) {
+                Double value = parseNumber(arguments.get(1));
+                if (value == null) {
+                    return false;
+                }
+                definitions.add(new Definition(write(arguments.getFirst()), value));
+                emit(DEFINE_NUMBER, definitions.size() - 1, lineNumber, nameId);
+                return true;
+            }
+            if (type == ReplaceCommand.class && !arguments.isEmpty()) {
+                double[] values = new double[arguments.size()];
+                int[] slots = new int[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    Double value = parseNumber(arguments.get(i));
+                    if (value != null) {
+                        values[i] = value;
+                        slots[i] = -1;
+                    } else {
+                        slots[i] = variables.slot(arguments.get(i));
+                    }
+                }
+                replacements.add(new Replacement(values, slots));
+                emit(REPLACE, replacements.size() - 1, lineNumber, nameId);
+                return true;
+            }
+            return false;
+        }
+
+        private static Double parseNumber(String token) {
+            return NumberScanner.isNumber(token) ? Double.parseDouble(token) : null;
+        }
+
+        /**
+         * Номер ячейки переменной, которую скрипт записывает.
+         */
+        private int write(String name) {
+            int slot = variables.slot(name);
+            if (slot >= written.length) {
+                written = Arrays.copyOf(written, Math.max(written.length * 2, slot + 1));
+            }
+            written[slot] = true;
+            return slot;
+        }
+
+        /**
+         * Делит строку на токены по пробельным символам.
+         */
+        private void tokenize(String line) {
+            tokens.clear();
+            int length = line.length();
+            int i = 0;
+            while (i < length) {
+                while (i < length && line.charAt(i) <= ' ') {
+                    i++;
+                }
+                int start = i;
+                while (i < length && line.charAt(i) > ' ') {
+                    i++;
+                }
+                if (i > start) {
+                    tokens.add(line.substring(start, i));
+                }
+            }
+        }
+
+        private void emit(byte opcode, int operand, int lineNumber, int nameId) {
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, size * 2);
+                operands = Arrays.copyOf(operands, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+                nameIds = Arrays.copyOf(nameIds, size * 2);
+            }
+            opcodes[size] = opcode;
+            operands[size] = operand;
+            lines[size] = lineNumber;
+            nameIds[size] = nameId;
+            size++;
+        }
+
+        Program build() {
+            if (!writesAnyVariable) {
+                reportUndefinedVariables();
+            }
+            return new Program(this);
+        }
+
+        /**
+         * Заменяет ошибками чтения переменных, которые не определены сейчас и нигде в скрипте не записываются:
+         * такие строки завершатся ошибкой при любом исполнении.
+         */
+        private void reportUndefinedVariables() {
+            for (int pc = 0; pc < size; pc++) {
+                String undefined = null;
+                String message = null;
+                if (opcodes[pc] == PUSH_VARIABLE && isUndefined(operands[pc])) {
+                    undefined = variables.name(operands[pc]);
+                    message = "PUSH: неизвестный параметр '" + undefined + "'";
+                } else if (opcodes[pc] == REPLACE) {
+                    for (int slot : replacements.get(operands[pc]).slots()) {
+                        if (slot >= 0 && isUndefined(slot)) {
+                            undefined = variables.name(slot);
+                            message = "REPLACE: переменная '" + undefined + "' не определена";
+                            break;
+                        }
+                    }
+                }
+                if (message != null) {
+                    logger.warn("Переменная '{}' в строке {} нигде не определяется", undefined, lines[pc]);
+                    failures.add(message);
+                    opcodes[pc] = ERROR;
+                    operands[pc] = failures.size() - 1;
+                }
+            }
+        }
+
+        private boolean isUndefined(int slot) {
+            return !variables.isDefined(slot) && (slot >= written.length || !written[slot]);
+        }
+    }
+}
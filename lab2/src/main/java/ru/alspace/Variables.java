@@ -0,0 +1,77 @@
+package ru.alspace;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Таблица переменных (DEFINE, POP &lt;имя&gt;) со значениями в массиве {@code double[]}.
+ * <p>
+ * Каждому имени один раз назначается номер ячейки ({@link #slot}); скомпилированный скрипт обращается
+ * к переменным по номерам, без поиска по имени и без упаковки чисел. Ячейка может существовать,
+ * но ещё не иметь значения: имя встретилось в скрипте раньше, чем было определено.
+ */
+public class Variables {
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[16];
+    private double[] values = new double[16];
+    private boolean[] defined = new boolean[16];
+    private int size;
+
+    /**
+     * Возвращает номер ячейки переменной, при необходимости заводя новую ячейку без значения.
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        if (size == values.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            defined = Arrays.copyOf(defined, size * 2);
+        }
+        names[size] = name;
+        slots.put(name, size);
+        return size++;
+    }
+
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    public boolean isDefined(int slot) {
+        return defined[slot];
+    }
+
+    /**
+     * Значение переменной в ячейке; для ячейки без значения - 0.
+     */
+    public double get(int slot) {
+        return values[slot];
+    }
+
+    public void set(int slot, double value) {
+        values[slot] = value;
+        defined[slot] = true;
+    }
+
+    /**
+     * Значение переменной по имени.
+     *
+     * @return значение или {@code null}, если переменная не определена
+     */
+    public Double get(String name) {
+        Integer slot = slots.get(name);
+        return slot != null && defined[slot] ? values[slot] : null;
+    }
+
+    public boolean containsKey(String name) {
+        Integer slot = slots.get(name);
+        return slot != null && defined[slot];
+    }
+
+    public void put(String name, double value) {
+        set(slot(name), value);
+    }
+}
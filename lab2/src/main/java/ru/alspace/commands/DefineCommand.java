@@ -3,6 +3,7 @@ package ru.alspace.commands;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.NumberScanner;
 
 import java.util.List;
 
@@ -24,12 +25,10 @@ public class DefineCommand extends Command {
         }
 
         String valueStr = args.get(1);
-        double value;
-        try {
-            value = Double.parseDouble(valueStr);
-        } catch (NumberFormatException e) {
+        if (!NumberScanner.isNumber(valueStr)) {
             throw new CommandExecutionException("DEFINE: не удалось преобразовать " + valueStr + " в число");
         }
+        double value = Double.parseDouble(valueStr);
 
         // Записываем в map
         context.defines().put(name, value);
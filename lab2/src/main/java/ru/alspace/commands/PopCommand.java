@@ -3,9 +3,9 @@ package ru.alspace.commands;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.DoubleStack;
 
 import java.util.List;
-import java.util.Stack;
 
 /**
  * POP
@@ -21,7 +21,7 @@ public class PopCommand extends Command {
             throw new CommandExecutionException("POP: Usage - 'POP' или 'POP <varName>' (получено " + args.size() + " арг.)");
         }
 
-        Stack<Double> stack = context.stack();
+        DoubleStack stack = context.stack();
         if (stack.isEmpty()) {
             throw new CommandExecutionException("POP: стек пуст");
         }
@@ -3,9 +3,9 @@ package ru.alspace.commands;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.DoubleStack;
 
 import java.util.List;
-import java.util.Stack;
 
 /**
  * PRINT
@@ -19,7 +19,7 @@ public class PrintCommand extends Command {
             throw new CommandExecutionException("PRINT: не должно быть аргументов, а получено " + args.size());
         }
 
-        Stack<Double> stack = context.stack();
+        DoubleStack stack = context.stack();
         if (stack.isEmpty()) {
             throw new CommandExecutionException("PRINT: стек пуст");
         }
@@ -3,6 +3,7 @@ package ru.alspace.commands;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.NumberScanner;
 
 import java.util.List;
 
@@ -19,10 +20,9 @@ public class PushCommand extends Command {
         String token = args.getFirst();
 
         double val;
-        // Сначала пробуем интерпретировать как число
-        try {
+        if (NumberScanner.isNumber(token)) {
             val = Double.parseDouble(token);
-        } catch (NumberFormatException e) {
+        } else {
             // Если не число, считаем, что это имя
             Double defVal = context.defines().get(token);
             if (defVal == null) {
@@ -3,11 +3,11 @@ package ru.alspace.commands;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.DoubleStack;
+import ru.alspace.NumberScanner;
+import ru.alspace.Variables;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
 
 /**
  * REPLACE
@@ -25,31 +25,26 @@ public class ReplaceCommand extends Command {
             throw new CommandExecutionException("REPLACE: ожидаются аргументы, а получено 0");
         }
 
-        Map<String, Double> variables = context.defines();
-        List<Double> replacements = new ArrayList<>();
+        Variables variables = context.defines();
+        double[] replacements = new double[args.size()];
+        int count = 0;
 
         for (String token : args) {
-            try {
+            if (NumberScanner.isNumber(token)) {
                 // Если можно преобразовать в число, то используем число
-                double value = Double.parseDouble(token);
-                replacements.add(value);
-            } catch (NumberFormatException e) {
+                replacements[count++] = Double.parseDouble(token);
+            } else {
                 // Предполагаем, что это имя переменной.
                 if (!variables.containsKey(token)) {
                     // Стек остаётся без изменений.
                     throw new CommandExecutionException("REPLACE: переменная '" + token + "' не определена");
                 }
-                replacements.add(variables.get(token));
+                replacements[count++] = variables.get(token);
             }
         }
 
-        // Если все аргументы корректны, очищаем стек от старых чисел.
-        Stack<Double> stack = context.stack();
-        stack.clear();
-
-        // Помещаем полученные значения в стек.
-        for (Double d : replacements) {
-            stack.push(d);
-        }
+        // Если все аргументы корректны, заменяем старые числа в стеке полученными значениями.
+        DoubleStack stack = context.stack();
+        stack.replace(replacements, count);
     }
 }
@@ -5,9 +5,9 @@ import org.apache.logging.log4j.Logger;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.DoubleStack;
 
 import java.util.List;
-import java.util.Stack;
 
 /**
  * SQRT
@@ -23,7 +23,7 @@ public class SqrtCommand extends Command {
             throw new CommandExecutionException("SQRT: не должно быть аргументов, а получено " + args.size());
         }
 
-        Stack<Double> stack = context.stack();
+        DoubleStack stack = context.stack();
         if (stack.isEmpty()) {
             throw new CommandExecutionException("SQRT: в стеке нет элементов");
         }
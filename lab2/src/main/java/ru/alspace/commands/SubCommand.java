@@ -5,9 +5,9 @@ import org.apache.logging.log4j.Logger;
 import ru.alspace.Command;
 import ru.alspace.CommandExecutionException;
 import ru.alspace.Context;
+import ru.alspace.DoubleStack;
 
 import java.util.List;
-import java.util.Stack;
 
 /**
  * -
@@ -24,7 +24,7 @@ public class SubCommand extends Command {
             throw new CommandExecutionException("- : не должно быть аргументов, а получено " + args.size());
         }
 
-        Stack<Double> stack = context.stack();
+        DoubleStack stack = context.stack();
         if (stack.size() < 2) {
             throw new CommandExecutionException("- : в стеке меньше 2 элементов");
         }
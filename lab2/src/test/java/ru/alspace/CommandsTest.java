@@ -6,9 +6,7 @@ import ru.alspace.commands.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -24,7 +22,7 @@ public class CommandsTest {
     @BeforeEach
     void setUp() {
         // Перед каждым тестом — чистый контекст (пустой стек, пустой map).
-        context = new Context(new Stack<>(), new HashMap<>());
+        context = new Context(new DoubleStack(), new Variables());
     }
 
     // ------------------------------------------------------------
@@ -349,4 +347,42 @@ public class CommandsTest {
                 sqrtCmd.execute(context, List.of("extra"))
         );
     }
+
+    // ------------------------------------------------------------
+    // REPLACE
+    // ------------------------------------------------------------
+    @Test
+    void testReplaceOk() throws CommandExecutionException {
+        // Стек: [1, 2, 3], n = 7, REPLACE 4 n => [4, 7]
+        context.stack().push(1.0);
+        context.stack().push(2.0);
+        context.stack().push(3.0);
+        context.defines().put("n", 7.0);
+
+        Command replaceCmd = new ReplaceCommand();
+        replaceCmd.execute(context, List.of("4", "n"));
+        assertEquals(2, context.stack().size());
+        assertEquals(7.0, context.stack().pop(), 1e-9);
+        assertEquals(4.0, context.stack().pop(), 1e-9);
+    }
+
+    @Test
+    void testReplaceUnknownVar() {
+        // Если переменная не определена, стек не меняется
+        context.stack().push(1.0);
+        Command replaceCmd = new ReplaceCommand();
+        assertThrows(CommandExecutionException.class, () ->
+                replaceCmd.execute(context, List.of("2", "x"))
+        );
+        assertEquals(1, context.stack().size());
+        assertEquals(1.0, context.stack().peek(), 1e-9);
+    }
+
+    @Test
+    void testReplaceNoArgs() {
+        Command replaceCmd = new ReplaceCommand();
+        assertThrows(CommandExecutionException.class, () ->
+                replaceCmd.execute(context, List.of())
+        );
+    }
 }
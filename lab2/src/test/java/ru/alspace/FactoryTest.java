@@ -3,9 +3,7 @@ package ru.alspace;
 import org.junit.jupiter.api.Test;
 import ru.alspace.commands.PushCommand;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -20,7 +18,7 @@ public class FactoryTest {
         assertInstanceOf(PushCommand.class, cmd);
 
         // Выполним
-        Context ctx = new Context(new Stack<>(), new HashMap<>());
+        Context ctx = new Context(new DoubleStack(), new Variables());
         cmd.execute(ctx, List.of("10"));
         assertEquals(10.0, ctx.stack().peek());
     }
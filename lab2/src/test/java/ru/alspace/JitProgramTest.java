@@ -0,0 +1,143 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнивает исполнение скрипта байт-кодом JitProgram с интерпретатором Program:
+ * вывод, сообщения об ошибках, итоговый стек и переменные должны совпадать.
+ */
+public class JitProgramTest {
+    private final CommandFactory factory = new CommandFactory();
+
+    private PrintStream oldOut;
+    private PrintStream oldErr;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @BeforeEach
+    void setUp() {
+        oldOut = System.out;
+        oldErr = System.err;
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(oldOut);
+        System.setErr(oldErr);
+    }
+
+    /**
+     * Итог исполнения скрипта: вывод, ошибки, стек снизу вверх и значения переменных a, b, x.
+     */
+    private record Result(String out, String err, List<Double> stack, List<Double> variables) {
+    }
+
+    private Result run(String script, boolean jit, double... initialStack) throws IOException {
+        out.reset();
+        err.reset();
+        Context context = new Context(new DoubleStack(), new Variables());
+        for (double value : initialStack) {
+            context.stack().push(value);
+        }
+        Program program = Program.compile(new BufferedReader(new StringReader(script)), factory, context.defines());
+        if (jit) {
+            JitProgram compiled = JitProgram.compile(program);
+            assertTrue(compiled.isCompiled());
+            compiled.run(context);
+        } else {
+            program.run(context);
+        }
+
+        List<Double> stack = new ArrayList<>();
+        while (!context.stack().isEmpty()) {
+            stack.addFirst(context.stack().pop());
+        }
+        List<Double> variables = new ArrayList<>();
+        for (String name : List.of("a", "b", "x")) {
+            variables.add(context.defines().get(name));
+        }
+        return new Result(out.toString(), err.toString(), stack, variables);
+    }
+
+    private void assertSameAsInterpreter(String script, double... initialStack) throws IOException {
+        Result expected = run(script, false, initialStack);
+        Result actual = run(script, true, initialStack);
+        assertEquals(expected, actual, script);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // арифметика, переменные и вывод
+            "PUSH 2\nPUSH 3\n+\nPUSH 4\n*\nPUSH 5\n-\nPUSH 3\n/\nPRINT\nSQRT\nPRINT",
+            "DEFINE a 4\nPUSH a\nPUSH a\n*\nPOP b\nPUSH b\nSQRT\nPRINT\nPOP\nPUSH b\nPRINT",
+            // деление на ноль и корень из отрицательного числа в середине скрипта
+            "PUSH 1\nPUSH 0\n/\nPRINT\nPUSH 3\n+\nPRINT",
+            "PUSH 1\nPUSH -0.0\n/\nPOP\nPOP\nPUSH 2\nPRINT",
+            "PUSH -4\nSQRT\nPRINT\nPUSH 8\n+\nSQRT\nPRINT",
+            "PUSH NaN\nSQRT\nPRINT",
+            // переполнение: предупреждение команды
+            "PUSH 1e308\nPUSH 1e308\n+\nPRINT\nPUSH 1\n*\nPRINT",
+            "PUSH 1e308\nPUSH 1e-308\n/\nPUSH 0\nPUSH 0\n-\nPRINT",
+            // нехватка чисел в стеке, неизвестные команды и переменные
+            "+\nPUSH 1\n+\nPOP\nPOP\nPRINT\nSQRT\nPOP x",
+            "PUSH 1\nFOO 2\nPUSH x\nPUSH 2\n/\nPRINT",
+            "POP x\nPUSH 3\nPOP x\nPUSH x\nPUSH x\n+\nPRINT",
+            // команды, которые исполняет интерпретатор
+            "DEFINE a 1\nPUSH 5\nPUSH 6\nREPLACE a 7\nPRINT\nPOP\nPRINT",
+            "PUSH 1\nPUSH 2\nPOP a b\n+ 1\nPRINT 2\nPRINT",
+            "DEFINE x 2\nDEFINE x y\nPUSH x\nPRINT"
+    })
+    void testSameAsInterpreter(String script) throws IOException {
+        assertSameAsInterpreter(script);
+    }
+
+    @Test
+    void testInitialStack() throws IOException {
+        // Числа, положенные в стек до запуска, доступны скрипту и остаются под его числами
+        assertSameAsInterpreter("+\nPRINT\nPUSH 10\n*\nPUSH 0\nSQRT\n/\nPRINT", 1, 2, 3);
+    }
+
+    @Test
+    void testDeepStack() throws IOException {
+        // Больше чисел, чем помещается в локальные переменные
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 3 * JitProgram.MAX_DEPTH; i++) {
+            script.append("PUSH ").append(i).append('\n');
+        }
+        for (int i = 0; i < 3 * JitProgram.MAX_DEPTH - 1; i++) {
+            script.append(i % 2 == 0 ? "+\n" : "-\n");
+        }
+        script.append("PRINT\n");
+        assertSameAsInterpreter(script.toString());
+    }
+
+    @Test
+    void testManyBlocks() throws IOException {
+        // Скрипт, которому не хватает одного сгенерированного метода, с ошибкой в конце
+        StringBuilder script = new StringBuilder("PUSH 0\nPOP a\n");
+        for (int i = 0; i < 2500; i++) {
+            script.append("PUSH a\nPUSH ").append(i).append("\n+\nPUSH 2\n/\nPOP a\n");
+        }
+        script.append("PUSH a\nPRINT\nPUSH 0\n/\nPRINT\n");
+        assertSameAsInterpreter(script.toString());
+    }
+}
@@ -0,0 +1,33 @@
+package ru.alspace;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверяет, что NumberScanner принимает ровно те строки, которые разбирает Double.parseDouble.
+ */
+public class NumberScannerTest {
+    private static boolean parses(String token) {
+        try {
+            Double.parseDouble(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // числа
+            "0", "10", "-3", "+4", "3.14", "1.", ".5", "-.5", "1e10", "1E-3", "2.5e+7", "1.e5", "7f", "7D", "1e3d",
+            "NaN", "-Infinity", "+NaN", "0x1p3", "0X1.8P-2", "-0x.8p1", "0x1p3f", " 12 ", "\t-1\n",
+            // имена и некорректные числа
+            "", " ", "x", "a1", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "1ee2", "1f2", "1ff", "nan", "infinity",
+            "Infinit", "NaNx", "0x", "0x1", "0x1.8", "0xp1", "0x1pz", "1_000", "١٢", "12abc", "--1", "+-1", "1 2"
+    })
+    void testMatchesParseDouble(String token) {
+        assertEquals(parses(token), NumberScanner.isNumber(token), token);
+    }
+}
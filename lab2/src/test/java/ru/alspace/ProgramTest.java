@@ -0,0 +1,126 @@
+package ru.alspace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты компиляции и исполнения скриптов целиком.
+ */
+public class ProgramTest {
+    private final CommandFactory factory = new CommandFactory();
+
+    private Context context;
+    private PrintStream oldOut;
+    private PrintStream oldErr;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @BeforeEach
+    void setUp() {
+        context = new Context(new DoubleStack(), new Variables());
+        oldOut = System.out;
+        oldErr = System.err;
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(oldOut);
+        System.setErr(oldErr);
+    }
+
+    private Program compile(String script) throws IOException {
+        return Program.compile(new BufferedReader(new StringReader(script)), factory, context.defines());
+    }
+
+    @Test
+    void testScript() throws IOException {
+        // Пустые строки и комментарии не становятся операциями
+        Program program = compile("""
+                # корень из 4 * 4
+                DEFINE a 4
+
+                push a
+                PUSH   a
+                *
+                SQRT
+                PRINT
+                """);
+        assertEquals(6, program.size());
+
+        program.run(context);
+        assertEquals("4.0", out.toString().trim());
+        assertEquals(1, context.stack().size());
+        assertEquals(4.0, context.stack().peek(), 1e-9);
+    }
+
+    @Test
+    void testErrorsReportLineNumbers() throws IOException {
+        Program program = compile("""
+                PUSH 1
+                FOO 2
+                PUSH 0
+                /
+                PUSH 3
+                +
+                PRINT
+                """);
+        program.run(context);
+
+        // Ошибки не прерывают исполнение: после деления на ноль стек [1, 0] не меняется, и + складывает 0 и 3
+        String errors = err.toString();
+        assertTrue(errors.contains("'FOO' (строка 2)"), errors);
+        assertTrue(errors.contains("'/' (строка 4)"), errors);
+        assertEquals("3.0", out.toString().trim());
+    }
+
+    @Test
+    void testVariables() throws IOException {
+        // x читается раньше, чем записывается: первая строка PUSH x завершается ошибкой при исполнении
+        Program program = compile("""
+                PUSH 5
+                PUSH x
+                POP x
+                DEFINE y 2
+                REPLACE x y x
+                *
+                PRINT
+                """);
+        program.run(context);
+
+        assertTrue(err.toString().contains("'PUSH' (строка 2): PUSH: неизвестный параметр 'x'"), err.toString());
+        assertEquals("10.0", out.toString().trim());
+        assertEquals(5.0, context.defines().get("x"), 1e-9);
+        assertEquals(2, context.stack().size());
+    }
+
+    @Test
+    void testUndefinedVariableFoundAtCompileTime() throws IOException {
+        // z нигде не записывается, поэтому строки с ней компилируются в ошибки
+        Program program = compile("""
+                PUSH z
+                REPLACE 1 z
+                PUSH 1
+                PRINT
+                """);
+        program.run(context);
+
+        String errors = err.toString();
+        assertTrue(errors.contains("(строка 1): PUSH: неизвестный параметр 'z'"), errors);
+        assertTrue(errors.contains("(строка 2): REPLACE: переменная 'z' не определена"), errors);
+        assertEquals("1.0", out.toString().trim());
+    }
+}